@@ -5,6 +5,7 @@ import indi.etern.musichud.client.music.decoder.AudioDecoder;
 import indi.etern.musichud.client.music.decoder.AudioFormatDetector;
 import indi.etern.musichud.client.music.decoder.FLACStreamDecoder;
 import indi.etern.musichud.client.music.decoder.MP3StreamDecoder;
+import indi.etern.musichud.client.music.stream.AudioSource;
 import lombok.SneakyThrows;
 
 import java.io.BufferedInputStream;
@@ -14,21 +15,22 @@ public enum FormatType {
     FLAC {
         @Override
         @SneakyThrows
-        public AudioDecoder newDecoder(BufferedInputStream inputStream) {
-            return new FLACStreamDecoder(inputStream);
+        public AudioDecoder newDecoder(BufferedInputStream inputStream, AudioSource source) {
+            return new FLACStreamDecoder(inputStream, source);
         }
     },
     MP3 {
         @Override
-        public AudioDecoder newDecoder(BufferedInputStream inputStream) {
-            return new MP3StreamDecoder(inputStream);
+        @SneakyThrows
+        public AudioDecoder newDecoder(BufferedInputStream inputStream, AudioSource source) {
+            return new MP3StreamDecoder(inputStream, source);
         }
     },
     AUTO {
         @Override
         @SneakyThrows
-        public AudioDecoder newDecoder(BufferedInputStream inputStream) {
-            return AudioFormatDetector.detectFormat(inputStream).newDecoder(inputStream);
+        public AudioDecoder newDecoder(BufferedInputStream inputStream, AudioSource source) {
+            return AudioFormatDetector.detectFormat(inputStream).newDecoder(inputStream, source);
         }
     };
     @JsonCreator
@@ -40,5 +42,5 @@ public enum FormatType {
                 .orElseThrow();
     }
 
-    public abstract AudioDecoder newDecoder(BufferedInputStream inputStream);
+    public abstract AudioDecoder newDecoder(BufferedInputStream inputStream, AudioSource source);
 }
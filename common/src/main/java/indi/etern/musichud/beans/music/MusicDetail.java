@@ -148,6 +148,14 @@ public class MusicDetail {
         return musicResourceInfo == null ? MusicResourceInfo.NONE : musicResourceInfo;
     }
 
+    /**
+     * 复制一份只替换资源信息的对象，用于给不同客户端发送不同音质
+     */
+    public MusicDetail withMusicResourceInfo(MusicResourceInfo musicResourceInfo) {
+        return new MusicDetail(getName(), id, getArtists(), getAlias(), getAlbum(), durationMillis,
+                getTranslations(), getPusherInfo(), musicResourceInfo);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return this == obj || (obj instanceof MusicDetail other && this.id == other.id);
@@ -62,6 +62,13 @@ public class MusicResourceInfo {
         return musicResourceInfo;
     }
 
+    /**
+     * 复制一份并替换歌词，缓存中共享的对象不应被修改
+     */
+    public MusicResourceInfo withLyricInfo(LyricInfo lyricInfo) {
+        return new MusicResourceInfo(id, url, bitrate, size, type, md5, fee, time, lyricInfo);
+    }
+
     public String getUrl() {
         return url == null ? "" : url;
     }
@@ -18,6 +18,10 @@ public class ClientConfigDefinition {
     public static ModConfigSpec.ConfigValue<Integer> hudWidth;
     public static ModConfigSpec.ConfigValue<Integer> hudHeight;
     public static ModConfigSpec.ConfigValue<Integer> hudCornerRadius;
+    public static ModConfigSpec.ConfigValue<Boolean> audioCacheEnabled;
+    public static ModConfigSpec.ConfigValue<Integer> audioCacheSizeMb;
+    public static ModConfigSpec.ConfigValue<Boolean> downmixToMono;
+    public static ModConfigSpec.ConfigValue<Boolean> resampleHiResAudio;
     public static ModConfigSpec.ConfigValue<String> clientCookie;
     public static ModConfigSpec.ConfigValue<String> clientAccountConfig;
     public static final String ENABLE_KEY = MusicHud.MOD_ID + ".config.enable";
@@ -30,6 +34,10 @@ public class ClientConfigDefinition {
     public static final String HUD_WIDTH_KEY = MusicHud.MOD_ID + ".config.hudWidth";
     public static final String HUD_HEIGHT_KEY = MusicHud.MOD_ID + ".config.hudHeight";
     public static final String HUD_CORNER_RADIUS_KEY = MusicHud.MOD_ID + ".config.hudCornerRadius";
+    public static final String AUDIO_CACHE_ENABLED_KEY = MusicHud.MOD_ID + ".config.audioCacheEnabled";
+    public static final String AUDIO_CACHE_SIZE_MB_KEY = MusicHud.MOD_ID + ".config.audioCacheSizeMb";
+    public static final String DOWNMIX_TO_MONO_KEY = MusicHud.MOD_ID + ".config.downmixToMono";
+    public static final String RESAMPLE_HI_RES_AUDIO_KEY = MusicHud.MOD_ID + ".config.resampleHiResAudio";
     public static final String CLIENT_COOKIE_KEY = MusicHud.MOD_ID + ".clientCookie";
     public static final String CLIENT_ACCOUNT_CONFIG = MusicHud.MOD_ID + ".clientAccountConfig";
 
@@ -74,6 +82,22 @@ public class ClientConfigDefinition {
                 .comment("Hud rounded corner radius")
                 .translation(HUD_CORNER_RADIUS_KEY)
                 .define("hudCornerRadius", 8);
+        ClientConfigDefinition.audioCacheEnabled = builder
+                .comment("Cache played audio on disk so repeated tracks need no download")
+                .translation(AUDIO_CACHE_ENABLED_KEY)
+                .define("audioCacheEnabled", false);
+        ClientConfigDefinition.audioCacheSizeMb = builder
+                .comment("Maximum size of the audio cache in MB")
+                .translation(AUDIO_CACHE_SIZE_MB_KEY)
+                .define("audioCacheSizeMb", 1024);
+        ClientConfigDefinition.downmixToMono = builder
+                .comment("Mix stereo audio down to mono")
+                .translation(DOWNMIX_TO_MONO_KEY)
+                .define("downmixToMono", false);
+        ClientConfigDefinition.resampleHiResAudio = builder
+                .comment("Resample audio above 48kHz to the output device sample rate")
+                .translation(RESAMPLE_HI_RES_AUDIO_KEY)
+                .define("resampleHiResAudio", true);
         ClientConfigDefinition.clientCookie = builder
                 .comment("Client NCM cookie json")
                 .translation(CLIENT_COOKIE_KEY)
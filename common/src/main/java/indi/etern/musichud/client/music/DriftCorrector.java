@@ -0,0 +1,51 @@
+package indi.etern.musichud.client.music;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较播放位置与服务器时间轴的误差：小误差用听不出来的 AL_PITCH 微调慢慢追上，
+ * 误差过大时交给调用方硬同步
+ */
+final class DriftCorrector {
+    static final long CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 开始播放或硬同步后等待时钟稳定再评估
+    static final long SETTLE_NANOS = TimeUnit.SECONDS.toNanos(3);
+    // 误差在这个范围内不调整
+    static final long DEAD_BAND_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // 超过这个误差不再靠变速追赶
+    static final long HARD_RESYNC_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // 0.5% 的变速听不出音高变化，追赶几百 ppm 的时钟漂移绰绰有余
+    static final float MAX_PITCH_DEVIATION = 0.005f;
+    // 按在这段时间内消除误差计算变速幅度
+    private static final long CORRECTION_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final double SMOOTHING = 0.3;
+
+    private double smoothedErrorNanos = 0;
+    private boolean hasSample = false;
+
+    /**
+     * @param errorNanos 播放位置减去服务器时间轴位置，正数表示超前
+     * @return 误差超过 {@link #HARD_RESYNC_NANOS}，需要硬同步
+     */
+    boolean needsHardResync(long errorNanos) {
+        return Math.abs(errorNanos) > HARD_RESYNC_NANOS;
+    }
+
+    /**
+     * @param errorNanos 播放位置减去服务器时间轴位置，正数表示超前
+     * @return 应设置的 AL_PITCH
+     */
+    float update(long errorNanos) {
+        // 时钟读数有几毫秒的抖动，平滑后再决定
+        smoothedErrorNanos = hasSample ? smoothedErrorNanos * (1 - SMOOTHING) + errorNanos * SMOOTHING : errorNanos;
+        hasSample = true;
+        if (Math.abs(smoothedErrorNanos) <= DEAD_BAND_NANOS) return 1f;
+        float deviation = (float) (smoothedErrorNanos / CORRECTION_WINDOW_NANOS);
+        return 1f - Math.clamp(deviation, -MAX_PITCH_DEVIATION, MAX_PITCH_DEVIATION);
+    }
+
+    void reset() {
+        smoothedErrorNanos = 0;
+        hasSample = false;
+    }
+}
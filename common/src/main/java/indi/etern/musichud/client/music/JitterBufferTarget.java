@@ -0,0 +1,72 @@
+package indi.etern.musichud.client.music;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据实测的下载/解码速度波动和欠载历史决定缓冲多少毫秒再开始播放，类似 WebRTC NetEQ 的目标延迟：
+ * 网络好时尽量少缓冲以降低启动延迟，网络差时自动加深缓冲。跨歌曲保留，网络状况通常不会随歌曲变化
+ */
+final class JitterBufferTarget {
+    static final long MIN_TARGET_MILLIS = 200;
+    static final long MAX_TARGET_MILLIS = 8000;
+    // 还没有测量数据时的目标
+    static final long DEFAULT_TARGET_MILLIS = 1000;
+    // 测得的最大欠账之外再留的余量
+    private static final double SAFETY_FACTOR = 1.25;
+    private static final long UNDERRUN_STEP_MILLIS = 500;
+    private static final long PEAK_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long BOOST_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(120);
+
+    // 数据到达慢于实时播放时累计的欠账，即这段时间内缓冲区会被消耗掉的量
+    private long deficitNanos = 0;
+    // 近期欠账的峰值，随时间衰减
+    private double peakNanos = 0;
+    // 欠载带来的额外缓冲，随时间衰减
+    private double boostMillis = 0;
+    private long lastUpdateNanos = System.nanoTime();
+    private boolean measured = false;
+
+    /**
+     * 下载线程每解码出一段 PCM 调用一次，不包括等待缓冲区空间的时间
+     *
+     * @param pcmNanos     这段 PCM 的播放时长
+     * @param elapsedNanos 读取并解码这段 PCM 的耗时
+     */
+    synchronized void onDecoded(long pcmNanos, long elapsedNanos) {
+        decay();
+        deficitNanos = Math.max(0, deficitNanos + elapsedNanos - pcmNanos);
+        peakNanos = Math.max(peakNanos, deficitNanos);
+        measured = true;
+    }
+
+    /**
+     * 出现能听到的欠载说明目标太浅，连续欠载时增加得更快
+     */
+    synchronized void onUnderrun() {
+        decay();
+        boostMillis = Math.min(MAX_TARGET_MILLIS, boostMillis * 1.5 + UNDERRUN_STEP_MILLIS);
+        measured = true;
+    }
+
+    /**
+     * 一段新的连接或定位之后欠账重新计算，连接建立的耗时不算作波动
+     */
+    synchronized void onDiscontinuity() {
+        deficitNanos = 0;
+    }
+
+    synchronized long targetMillis() {
+        if (!measured) return DEFAULT_TARGET_MILLIS;
+        decay();
+        long target = MIN_TARGET_MILLIS + (long) (TimeUnit.NANOSECONDS.toMillis((long) peakNanos) * SAFETY_FACTOR + boostMillis);
+        return Math.min(target, MAX_TARGET_MILLIS);
+    }
+
+    private void decay() {
+        long now = System.nanoTime();
+        long elapsed = now - lastUpdateNanos;
+        lastUpdateNanos = now;
+        peakNanos *= Math.pow(0.5, (double) elapsed / PEAK_HALF_LIFE_NANOS);
+        boostMillis *= Math.pow(0.5, (double) elapsed / BOOST_HALF_LIFE_NANOS);
+    }
+}
@@ -20,13 +20,17 @@ import java.time.ZonedDateTime;
 import java.util.ArrayDeque;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class NowPlayingInfo {
     private static volatile NowPlayingInfo instance = null;
+    // 播放暂停或卡顿时歌词要跟着停，所以最长只睡这么久就重新对照播放时钟
+    private static final long LYRIC_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
     private final Logger logger = MusicHud.getLogger(NowPlayingInfo.class);
+    private final PlaybackClock playbackClock = StreamAudioPlayer.getInstance().getPlaybackClock();
     @Getter
     private final Set<Consumer<LyricLine>> lyricLineUpdateListener = new HashSet<>();
     @Getter
@@ -37,6 +41,7 @@ public class NowPlayingInfo {
     private MusicResourceInfo currentlyPlayingMusicResourceInfo;
     @Getter
     private volatile Duration musicDuration = null;
+    private volatile long musicDurationNanos = 0;
     @Getter
     private volatile ZonedDateTime musicStartTime = null;
     @Getter
@@ -56,7 +61,8 @@ public class NowPlayingInfo {
             LyricLine line = lyricLines1.peek();
             if (line != null) {
                 if (line.getStartTime() != null) {
-                    if (ZonedDateTime.now().isAfter(this.musicStartTime.plus(line.getStartTime()))) {
+                    long waitNanos = line.getStartTime().toNanos() - getPlayedNanos();
+                    if (waitNanos <= 0) {
                         lyricLines1.poll();
                         currentLyricLine = line;
                         LyricLine next = lyricLines1.peek();
@@ -64,14 +70,11 @@ public class NowPlayingInfo {
                             callLyricsUpdateListeners(line);
                             logger.debug("lyricsUpdater stopped due to no more lyrics");
                             break;
-                        } else if (ZonedDateTime.now().isBefore(this.musicStartTime.plus(next.getStartTime()))) {
+                        } else if (next.getStartTime() == null || next.getStartTime().toNanos() > getPlayedNanos()) {
+                            // 跳过已经过去的歌词行，只通知最后一行
                             callLyricsUpdateListeners(line);
-                            Duration startTime = next.getStartTime();
-                            if (sleepUntil(this.musicStartTime, startTime)) {
-                                logger.info("lyricsUpdater interruption");
-                            }
                         }
-                    } else if (sleepUntil(this.musicStartTime, line.getStartTime())) {
+                    } else if (sleepNanos(Math.min(waitNanos, LYRIC_RECHECK_NANOS))) {
                         logger.info("lyricsUpdater interruption");
                     }
                 } else {
@@ -94,10 +97,26 @@ public class NowPlayingInfo {
     }
 
     public float getProgressRate() {
-        if (musicDuration == null || musicStartTime == null) {
+        long durationNanos = musicDurationNanos;
+        if (durationNanos == 0) {
             return 0.0f;
         }
-        return (float) Duration.between(musicStartTime, ZonedDateTime.now()).toMillis() / musicDuration.toMillis();
+        return (float) getPlayedNanos() / durationNanos;
+    }
+
+    /**
+     * 按实际播放的采样计算的播放位置，不超过歌曲时长，未在播放时为 0
+     */
+    public long getPlayedNanos() {
+        long durationNanos = musicDurationNanos;
+        if (durationNanos == 0 || !playbackClock.isActive()) {
+            return 0;
+        }
+        return Math.min(playbackClock.positionNanos(), durationNanos);
+    }
+
+    public long getPlayedMillis() {
+        return getPlayedNanos() / 1_000_000L;
     }
 
     public void switchMusic(MusicDetail musicDetail, MusicResourceInfo resourceInfo, ZonedDateTime musicStartTime) {
@@ -106,9 +125,11 @@ public class NowPlayingInfo {
         currentlyPlayingMusicResourceInfo = resourceInfo;
         if (!resourceInfo.equals(MusicResourceInfo.NONE)) {
             musicDuration = Duration.ofMillis(musicDetail.getDurationMillis());
+            musicDurationNanos = musicDuration.toNanos();
             this.musicStartTime = musicStartTime;
         } else {
             musicDuration = null;
+            musicDurationNanos = 0;
             this.musicStartTime = null;
         }
         LyricInfo lyricInfo = resourceInfo.getLyricInfo();
@@ -149,36 +170,22 @@ public class NowPlayingInfo {
         });
     }
 
-    private boolean sleepUntil(ZonedDateTime musicStartTime, Duration startTime) {
-        Duration between = Duration.between(ZonedDateTime.now(), musicStartTime.plus(startTime));
-        if (between.isPositive()) {
-            try {
-                Thread.sleep(between);
-            } catch (InterruptedException ignored) {
-                return true;
-            }
+    private boolean sleepNanos(long nanos) {
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException ignored) {
+            return true;
         }
         return false;
     }
 
-    public Duration getPlayedDuration() {//FIXME
-        if (musicStartTime == null) {
-            return Duration.ZERO;
-        }
-        Duration startedPlayingDuration = Duration.between(musicStartTime, ZonedDateTime.now());
-        if (startedPlayingDuration.compareTo(musicDuration) > 0) {
-            return musicDuration;
-        } else {
-            return startedPlayingDuration;
-        }
+    public Duration getPlayedDuration() {
+        return Duration.ofNanos(getPlayedNanos());
     }
 
     public boolean isCompleted() {
-        if (musicStartTime == null) {
-            return true;
-        }
-        Duration startedPlayingDuration = Duration.between(musicStartTime, ZonedDateTime.now());
-        return startedPlayingDuration.compareTo(musicDuration) > 0;
+        long durationNanos = musicDurationNanos;
+        return durationNanos == 0 || getPlayedNanos() >= durationNanos;
     }
 
     public PlayerInfo getPusherPlayerInfo() {
@@ -202,6 +209,7 @@ public class NowPlayingInfo {
         currentlyPlayingMusicDetail = null;
         currentlyPlayingMusicResourceInfo = null;
         musicDuration = null;
+        musicDurationNanos = 0;
         musicStartTime = null;
         lyricLines = null;
         atomicLyricLines.set(null);
@@ -0,0 +1,202 @@
+package indi.etern.musichud.client.music;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 下载线程与播放线程之间的单生产者/单消费者 PCM 环形缓冲区。
+ * <p>
+ * 生产者通过 {@link #writableSlice()} 让解码器直接写入，消费者通过 {@link #readableSlice(int)}
+ * 直接把数据交给 OpenAL，两侧都不需要复制。缓冲时长、欠载和流结束都以这里为准。
+ */
+final class PcmRingBuffer {
+    // 两个游标分别放在不同的缓存行上，避免伪共享
+    private static final int WRITE = 7;
+    private static final int READ = 23;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final ByteBuffer storage;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray cursors = new AtomicLongArray(31);
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+    private volatile boolean endOfStream = false;
+    private volatile boolean closed = false;
+    private volatile int bytesPerSecond = 0;
+
+    /**
+     * @param capacity 必须是 2 的幂，且是采样帧大小的整数倍
+     */
+    PcmRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        // 由 GC 回收：关闭时下载线程可能仍在写入，不能手动释放
+        this.storage = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void setFormat(int sampleRate, int bytesPerFrame) {
+        this.bytesPerSecond = sampleRate * bytesPerFrame;
+    }
+
+    long bufferedBytes() {
+        return cursors.get(WRITE) - cursors.get(READ);
+    }
+
+    long bufferedMillis() {
+        int bytesPerSecond = this.bytesPerSecond;
+        return bytesPerSecond == 0 ? 0 : bufferedBytes() * 1000 / bytesPerSecond;
+    }
+
+    /**
+     * 格式确定前返回 1，即任意数据
+     */
+    long bytesForMillis(long millis) {
+        int bytesPerSecond = this.bytesPerSecond;
+        return bytesPerSecond == 0 ? 1 : bytesPerSecond * millis / 1000;
+    }
+
+    int freeBytes() {
+        return capacity - (int) bufferedBytes();
+    }
+
+    // ---- 生产者 ----
+
+    /**
+     * 等待直到至少有 minBytes 空闲空间
+     *
+     * @return 缓冲区已关闭时返回 false
+     */
+    boolean awaitWritable(int minBytes) throws InterruptedException {
+        while (!closed && freeBytes() < minBytes) {
+            waitingProducer = Thread.currentThread();
+            if (!closed && freeBytes() < minBytes) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            waitingProducer = null;
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return !closed;
+    }
+
+    /**
+     * 从写游标开始、到环尾或已用区域为止的连续空闲区域
+     */
+    ByteBuffer writableSlice() {
+        long write = cursors.getPlain(WRITE);
+        int index = (int) (write & mask);
+        int length = Math.min(freeBytes(), capacity - index);
+        return storage.slice(index, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void commitWrite(int bytes) {
+        cursors.set(WRITE, cursors.getPlain(WRITE) + bytes);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * 从创建起累计写入的字节数
+     */
+    long writePosition() {
+        return cursors.get(WRITE);
+    }
+
+    void markEndOfStream() {
+        endOfStream = true;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    // ---- 消费者 ----
+
+    /**
+     * 等待直到至少有 minBytes 数据、流结束或超时
+     *
+     * @return 当前缓冲的字节数
+     */
+    long awaitReadable(long minBytes, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        long buffered;
+        while ((buffered = bufferedBytes()) < minBytes && !endOfStream && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            waitingConsumer = Thread.currentThread();
+            if (bufferedBytes() < minBytes && !endOfStream) {
+                LockSupport.parkNanos(this, Math.min(remaining, PARK_NANOS));
+            }
+            waitingConsumer = null;
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return buffered;
+    }
+
+    /**
+     * 从读游标开始的连续可读区域，最多 maxBytes；读完后调用 {@link #commitRead(int)}
+     */
+    ByteBuffer readableSlice(int maxBytes) {
+        long read = cursors.getPlain(READ);
+        int index = (int) (read & mask);
+        int length = (int) Math.min(Math.min(bufferedBytes(), maxBytes), capacity - index);
+        return storage.slice(index, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 把最多 maxBytes 数据复制到 address 并提交读取，供 OpenAL 回调线程使用，不分配对象
+     *
+     * @return 复制的字节数
+     */
+    int drainTo(long address, int maxBytes) {
+        long read = cursors.getPlain(READ);
+        int length = (int) Math.min(bufferedBytes(), maxBytes);
+        int index = (int) (read & mask);
+        int first = Math.min(length, capacity - index);
+        long base = MemoryUtil.memAddress0(storage);
+        MemoryUtil.memCopy(base + index, address, first);
+        if (length > first) {
+            MemoryUtil.memCopy(base, address + first, length - first);
+        }
+        commitRead(length);
+        return length;
+    }
+
+    /**
+     * 从创建起累计读取的字节数，任何线程都可以调用
+     */
+    long readPosition() {
+        return cursors.get(READ);
+    }
+
+    void commitRead(int bytes) {
+        cursors.set(READ, cursors.getPlain(READ) + bytes);
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+    }
+
+    boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * 流已结束且数据已全部取出
+     */
+    boolean isDrained() {
+        return endOfStream && bufferedBytes() == 0;
+    }
+
+    void close() {
+        closed = true;
+        Thread producer = waitingProducer;
+        if (producer != null) LockSupport.unpark(producer);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+}
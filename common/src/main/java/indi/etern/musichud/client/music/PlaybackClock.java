@@ -0,0 +1,82 @@
+package indi.etern.musichud.client.music;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 由实际播放的采样数推算的播放位置，欠载和重试期间停止前进。
+ * <p>
+ * 播放线程定期用 OpenAL 的播放进度校准锚点，读取方在两次校准之间按 {@link System#nanoTime()} 外推，
+ * 读取不加锁也不分配对象，HUD 每帧调用也没有负担。
+ */
+public final class PlaybackClock {
+    // 外推上限，略大于播放线程最长的校准间隔，播放线程卡住时不会一直走下去
+    private static final long MAX_EXTRAPOLATION_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+
+    // 顺序锁：写入时为奇数
+    private volatile int version = 0;
+    private long anchorPositionNanos = 0;
+    private long anchorSystemNanos = 0;
+    private boolean running = false;
+    private volatile boolean active = false;
+
+    /**
+     * @return 当前歌曲的播放位置（纳秒），尚未开始播放时为 0
+     */
+    public long positionNanos() {
+        while (true) {
+            int before = version;
+            if ((before & 1) == 0) {
+                long position = anchorPositionNanos;
+                long anchor = anchorSystemNanos;
+                boolean running = this.running;
+                VarHandle.loadLoadFence();
+                if (version == before) {
+                    if (!running) return position;
+                    return position + Math.min(System.nanoTime() - anchor, MAX_EXTRAPOLATION_NANOS);
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public long positionMillis() {
+        return positionNanos() / 1_000_000L;
+    }
+
+    /**
+     * @return 是否有歌曲正在使用这个时钟
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    static long framesToNanos(long frames, int sampleRate) {
+        return sampleRate <= 0 ? 0 : frames * TimeUnit.SECONDS.toNanos(1) / sampleRate;
+    }
+
+    /**
+     * 开始播放，basePositionNanos 为缓冲区中第一个采样在歌曲中的位置
+     */
+    void start(long basePositionNanos) {
+        active = true;
+        update(basePositionNanos, true);
+    }
+
+    /**
+     * @param running 为 false 时（欠载、暂停、播放结束）位置停在 positionNanos
+     */
+    synchronized void update(long positionNanos, boolean running) {
+        version++;
+        VarHandle.storeStoreFence();
+        anchorPositionNanos = positionNanos;
+        anchorSystemNanos = System.nanoTime();
+        this.running = running;
+        version++;
+    }
+
+    synchronized void reset() {
+        active = false;
+        update(0, false);
+    }
+}
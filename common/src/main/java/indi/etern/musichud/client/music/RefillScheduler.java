@@ -0,0 +1,59 @@
+package indi.etern.musichud.client.music;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录已排队 OpenAL 缓冲区的采样帧数，根据 AL_SAMPLE_OFFSET 算出下一个缓冲区播完的时刻，
+ * 让播放线程只在需要补充数据时醒来
+ */
+final class RefillScheduler {
+    // 提前醒来的余量，覆盖调度抖动和上传耗时
+    static final long SAFETY_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final int[] queuedFrames;
+    private int head = 0;
+    private int size = 0;
+
+    RefillScheduler(int capacity) {
+        this.queuedFrames = new int[capacity];
+    }
+
+    void onQueued(int frames) {
+        if (size == queuedFrames.length) return;
+        queuedFrames[(head + size) % queuedFrames.length] = frames;
+        size++;
+    }
+
+    /**
+     * @return 出队缓冲区的采样帧数
+     */
+    int onUnqueued() {
+        if (size == 0) return 0;
+        int frames = queuedFrames[head];
+        head = (head + 1) % queuedFrames.length;
+        size--;
+        return frames;
+    }
+
+    int queuedCount() {
+        return size;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * @param sampleOffset AL_SAMPLE_OFFSET，即在队首缓冲区中的播放位置
+     * @return 距离队首缓冲区播完还需等待的纳秒数，已扣除安全余量
+     */
+    long nanosUntilNextDrain(int sampleOffset, int sampleRate) {
+        if (size == 0 || sampleRate <= 0) return MIN_WAIT_NANOS;
+        long remainingFrames = queuedFrames[head] - (long) sampleOffset;
+        long nanos = remainingFrames * TimeUnit.SECONDS.toNanos(1) / sampleRate - SAFETY_MARGIN_NANOS;
+        return Math.clamp(nanos, MIN_WAIT_NANOS, MAX_WAIT_NANOS);
+    }
+}
@@ -0,0 +1,129 @@
+package indi.etern.musichud.client.music;
+
+import indi.etern.musichud.MusicHud;
+import indi.etern.musichud.beans.music.MusicResourceInfo;
+import indi.etern.musichud.client.music.decoder.AudioDecoder;
+import indi.etern.musichud.client.music.stream.AudioCache;
+import indi.etern.musichud.client.music.stream.AudioSource;
+import lombok.Getter;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 在当前歌曲结束前打开下一首歌并预解码开头几秒，切歌时直接接管已准备好的源、解码器和缓冲区
+ */
+class StandbyTrack {
+    private static final Logger LOGGER = MusicHud.getLogger(StandbyTrack.class);
+    private static final long PREFETCH_MILLIS = 5000;
+
+    @Getter
+    private final MusicResourceInfo resourceInfo;
+    @Getter
+    private final PcmRingBuffer ringBuffer;
+    private final Future<?> prefetchFuture;
+    @Getter
+    private volatile AudioSource source;
+    @Getter
+    private volatile AudioDecoder decoder;
+    // 已写入环形缓冲区的 PCM 字节数，接管后用于断点续传定位
+    @Getter
+    private volatile long deliveredBytes = 0;
+    private volatile boolean handedOver = false;
+    private volatile boolean failed = false;
+    private volatile boolean cancelled = false;
+
+    StandbyTrack(MusicResourceInfo resourceInfo, ZonedDateTime startAt, int ringCapacity) {
+        this.resourceInfo = resourceInfo;
+        this.ringBuffer = new PcmRingBuffer(ringCapacity);
+        this.prefetchFuture = MusicHud.EXECUTOR.submit(() -> {
+            Thread.currentThread().setName("Standby Prefetcher");
+            try {
+                long delay = Duration.between(ZonedDateTime.now(), startAt).toMillis();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                prefetch();
+            } catch (InterruptedException ignored) {
+            } catch (Exception e) {
+                failed = true;
+                LOGGER.warn("Failed to prefetch next music (id: {}): {}", resourceInfo.getId(), e.getMessage());
+            }
+        });
+    }
+
+    private void prefetch() throws Exception {
+        LOGGER.debug("Prefetching next music (id: {})", resourceInfo.getId());
+        AudioSource source = AudioCache.getInstance().open(resourceInfo);
+        this.source = source;
+        if (cancelled) {
+            // cancel() 可能在打开期间执行，没有看到这个源
+            source.close();
+            return;
+        }
+        decoder = StreamAudioPlayer.loadAudioDecoder(source, resourceInfo.getType());
+        while (!handedOver && ringBuffer.bufferedMillis() < PREFETCH_MILLIS) {
+            if (!ringBuffer.awaitWritable(StreamAudioPlayer.SKIP_CHUNK_SIZE)) return;
+            int read = decoder.readInto(ringBuffer.writableSlice());
+            if (read < 0) {
+                ringBuffer.markEndOfStream();
+                break;
+            }
+            ringBuffer.setFormat(decoder.getSampleRate(), StreamAudioPlayer.getBytesPerSample(decoder.getFormat()));
+            ringBuffer.commitWrite(read);
+            deliveredBytes += read;
+        }
+        LOGGER.debug("Prefetched {} ms of next music", ringBuffer.bufferedMillis());
+    }
+
+    boolean matches(MusicResourceInfo resourceInfo) {
+        return resourceInfo != null && this.resourceInfo.getId() == resourceInfo.getId()
+                && Objects.equals(this.resourceInfo.getUrl(), resourceInfo.getUrl());
+    }
+
+    /**
+     * 停止预取并等待预取线程退出，之后源和解码器归调用方所有
+     *
+     * @return 预取失败或尚未开始时返回 false，此时应冷启动
+     */
+    boolean handOver() {
+        handedOver = true;
+        if (!prefetchFuture.isDone() && decoder == null) {
+            // 还没到预取时间或仍在建立连接，不值得等待
+            cancel();
+            return false;
+        }
+        try {
+            prefetchFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            return false;
+        } catch (ExecutionException ignored) {
+        }
+        if (failed || decoder == null || ringBuffer.bufferedBytes() == 0) {
+            cancel();
+            return false;
+        }
+        return true;
+    }
+
+    void cancel() {
+        handedOver = true;
+        cancelled = true;
+        prefetchFuture.cancel(true);
+        ringBuffer.close();
+        AudioDecoder decoder = this.decoder;
+        if (decoder != null) {
+            decoder.close();
+        }
+        AudioSource source = this.source;
+        if (source != null) {
+            source.close();
+        }
+    }
+}
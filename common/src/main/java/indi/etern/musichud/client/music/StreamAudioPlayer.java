@@ -2,20 +2,29 @@ package indi.etern.musichud.client.music;
 
 import indi.etern.musichud.MusicHud;
 import indi.etern.musichud.beans.music.FormatType;
+import indi.etern.musichud.beans.music.MusicResourceInfo;
 import indi.etern.musichud.client.config.ClientConfigDefinition;
 import indi.etern.musichud.client.music.decoder.AudioDecoder;
 import indi.etern.musichud.client.music.decoder.AudioFormatDetector;
+import indi.etern.musichud.client.music.decoder.PcmStage;
+import indi.etern.musichud.client.music.stream.AudioSource;
+import indi.etern.musichud.client.music.stream.AudioCache;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import net.minecraft.client.Minecraft;
 import net.minecraft.sounds.SoundSource;
 import org.apache.logging.log4j.Logger;
 import org.lwjgl.openal.AL10;
+import org.lwjgl.openal.AL11;
+import org.lwjgl.openal.ALC10;
+import org.lwjgl.openal.SOFTCallbackBuffer;
+import org.lwjgl.openal.SOFTCallbackBufferType;
+import org.lwjgl.system.MemoryUtil;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.*;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.ZonedDateTime;
@@ -23,13 +32,25 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 public class StreamAudioPlayer {
     private static final int BUFFER_COUNT = 4;
-    private static final int BUFFER_SIZE = 65536;
+    // 每个 OpenAL 缓冲区的时长，与采样格式无关
+    private static final int BUFFER_MILLIS = 250;
+    static final int SKIP_CHUNK_SIZE = 4096;
+    // 约 12 秒 44.1kHz 立体声 16 位
+    private static final int RING_CAPACITY = 1 << 21;
+    private static final long CALLBACK_MONITOR_INTERVAL = 100;
+    // 备用轨道最多丢弃这么多开头来追上服务器的开始时刻
+    private static final long STANDBY_MAX_LATE_MILLIS = 2000;
+    // 迟到时最多丢弃这么多 PCM，更多的部分由下载线程重新定位
+    private static final long MAX_CATCH_UP_MILLIS = 10000;
+    // 服务器安排的提前量最多 10 秒，等待更久说明时钟偏移或开始时刻有误
+    private static final long MAX_SCHEDULED_WAIT_MILLIS = 10000;
     private static final Logger LOGGER = MusicHud.getLogger(StreamAudioPlayer.class);
     private static volatile StreamAudioPlayer instance = null;
 
@@ -37,25 +58,60 @@ public class StreamAudioPlayer {
     private final AtomicBoolean initialized = new AtomicBoolean(false);
     private final AtomicReference<Status> status = new AtomicReference<>(Status.IDLE);
     private final int retryDelayAdditionalMs = 1000;
-    private final BlockingQueue<byte[]> audioBuffer = new LinkedBlockingQueue<>(30); // 最大30个数据块的缓冲区
 
     @Getter
     private final Set<Consumer<Status>> statusChangeListener = new HashSet<>();
-    private final AtomicLong totalBufferedBytes = new AtomicLong(0);
+    @Getter
+    private final Set<Consumer<PlaybackStats>> playbackStatsListener = new HashSet<>();
+    // 自上次上报以来播放中断等待数据的次数
+    private final AtomicInteger underruns = new AtomicInteger();
     //For retry
-    String currentUrlString;
-    FormatType currentFormatType;
+    MusicResourceInfo currentResourceInfo;
     ZonedDateTime currentStartTime;
     private int source = 0;
+    private final int[] freeBuffers = new int[BUFFER_COUNT];
+    private int freeBufferCount = 0;
+    private final RefillScheduler refillScheduler = new RefillScheduler(BUFFER_COUNT);
+    private SOFTCallbackBufferType bufferCallback;
+    private volatile PcmRingBuffer ringBuffer;
+    private volatile StandbyTrack standbyTrack;
     private float lastVolume;
     private Future<?> playingFuture;
     private Future<?> downloadFuture;
     private volatile boolean shouldContinuePlaying = false;
     private volatile boolean shouldContinueDownloading = false;
     private volatile AudioDecoder currentDecoder;
-    private volatile long bytesPerSecond = 0;
+    private volatile AudioSource currentAudioSource;
+    @Getter
+    private final PlaybackClock playbackClock = new PlaybackClock();
+    // 环形缓冲区中第一个采样在歌曲中的位置，由下载线程在首次写入前确定
+    private volatile long ringStartMillis = 0;
+    // 已从 OpenAL 队列移除的缓冲区帧数，或回调模式下已交给混音器的帧数
+    private long unqueuedFrames = 0;
+    private volatile long callbackFrames = 0;
     private volatile boolean isBuffering = false;
     private volatile ZonedDateTime serverStartTime;
+    // serverStartTime 对应的 System.nanoTime()，之后的对齐只用单调时钟计算
+    private volatile long serverStartNanos;
+    // 服务器指定了开始时刻，开始播放前需要等到该时刻或追上进度
+    private volatile boolean alignToServer = false;
+    // 冷启动时从开始加载到预缓冲完成的耗时，上报后清空
+    private volatile long prebufferMillis = -1;
+    private final DriftCorrector driftCorrector = new DriftCorrector();
+    private final JitterBufferTarget jitterBufferTarget = new JitterBufferTarget();
+    // 欠载后等待缓冲回目标水位再继续播放
+    private volatile boolean rebuffering = false;
+    private float lastPitch = 1;
+    private long nextDriftCheckNanos = 0;
+    // 超前太多时暂停到这个时刻，0 表示没有暂停
+    private long driftPausedUntilNanos = 0;
+    // 落后太多时由消费方从缓冲区丢弃的字节数
+    private volatile long pendingDropBytes = 0;
+    // 落后的部分超过缓冲区时请求下载线程重新定位
+    private volatile boolean resyncRequested = false;
+    // 下载线程定位造成的跳跃：读游标越过 discontinuityCursor 时播放位置加上 discontinuityShiftMillis
+    private volatile long discontinuityShiftMillis = 0;
+    private volatile long discontinuityCursor = -1;
 
     public static StreamAudioPlayer getInstance() {
         if (instance == null) {
@@ -68,23 +124,49 @@ public class StreamAudioPlayer {
         return instance;
     }
 
-    private static AudioDecoder loadAudioDecoder(String urlString, FormatType formatType) throws URISyntaxException, IOException {
-        URL url = new URI(urlString).toURL();
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setConnectTimeout(5000);
-        connection.setReadTimeout(10000);
-        InputStream inputStream = connection.getInputStream();
-        BufferedInputStream bufferedStream = new BufferedInputStream(inputStream, 8192);
+    static AudioDecoder loadAudioDecoder(AudioSource source, FormatType formatType) throws IOException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(source.open(0), 8192);
 
+        AudioDecoder decoder;
         if (formatType != FormatType.AUTO) {
             FormatType detectedFormatType = AudioFormatDetector.detectFormat(bufferedStream);
             if (detectedFormatType != formatType) {
                 LOGGER.warn("Detected format type is not equals to resource format type, using detected");
             }
 
-            return detectedFormatType.newDecoder(bufferedStream);
+            decoder = detectedFormatType.newDecoder(bufferedStream, source);
+        } else {
+            decoder = formatType.newDecoder(bufferedStream, source);
+        }
+        int deviceSampleRate = ClientConfigDefinition.resampleHiResAudio.get() ? getDeviceSampleRate() : 0;
+        return new PcmStage(decoder, ClientConfigDefinition.downmixToMono.get(), deviceSampleRate);
+    }
+
+    /**
+     * @return 当前 OpenAL 设备的输出采样率，无法获取时返回 0
+     */
+    private static int getDeviceSampleRate() {
+        long context = ALC10.alcGetCurrentContext();
+        if (context == 0) return 0;
+        long device = ALC10.alcGetContextsDevice(context);
+        return device == 0 ? 0 : ALC10.alcGetInteger(device, ALC10.ALC_FREQUENCY);
+    }
+
+    /**
+     * 根据资源大小/码率/时长估算播放到 elapsedMillis 时对应的编码字节偏移
+     *
+     * @return 无法估算时返回 -1
+     */
+    static long estimateByteOffset(MusicResourceInfo resourceInfo, long contentLength, long elapsedMillis) {
+        long size = resourceInfo.getSize() > 0 ? resourceInfo.getSize() : contentLength;
+        int timeMillis = resourceInfo.getTime();
+        if (size > 0 && timeMillis > 0) {
+            if (elapsedMillis >= timeMillis) return -1;
+            return size * elapsedMillis / timeMillis;
+        } else if (resourceInfo.getBitrate() > 0) {
+            return resourceInfo.getBitrate() / 8L * elapsedMillis / 1000L;
         } else {
-            return formatType.newDecoder(bufferedStream);
+            return -1;
         }
     }
 
@@ -106,17 +188,49 @@ public class StreamAudioPlayer {
         } catch (InterruptedException ignored) {
         } finally {
             LOGGER.info("Fully retrying");
-            playAsyncFromUrl(currentUrlString, currentFormatType, currentStartTime);
+            playAsync(currentResourceInfo, currentStartTime);
         }
     }
 
-    public CompletableFuture<ZonedDateTime> playAsyncFromUrl(String urlString, FormatType formatType, ZonedDateTime startTime) {
+    /**
+     * 在 startAt 开始预取下一首歌的开头，切到这首歌时可以立即播放
+     */
+    public void prefetchNext(MusicResourceInfo resourceInfo, ZonedDateTime startAt) {
+        StandbyTrack previous = standbyTrack;
+        if (previous != null) {
+            if (previous.matches(resourceInfo)) return;
+            previous.cancel();
+        }
+        if (resourceInfo == null || resourceInfo.equals(MusicResourceInfo.NONE) || resourceInfo.getUrl() == null) {
+            standbyTrack = null;
+            return;
+        }
+        standbyTrack = new StandbyTrack(resourceInfo, startAt, RING_CAPACITY);
+    }
+
+    /**
+     * 取出与 resourceInfo 匹配且已预取数据的备用轨道；不匹配时保留，它可能属于之后的歌曲
+     */
+    private StandbyTrack takeStandby(MusicResourceInfo resourceInfo, ZonedDateTime startTime) {
+        StandbyTrack standby = standbyTrack;
+        if (standby == null || !standby.matches(resourceInfo)) return null;
+        // 已经迟到太多时预取的开头没有用，丢弃的数据比重新定位还多
+        standbyTrack = null;
+        if (startTime != null && Duration.between(startTime, ZonedDateTime.now()).toMillis() > STANDBY_MAX_LATE_MILLIS) {
+            // 不再使用时立即停止，否则它会和冷启动同时下载同一首歌
+            standby.cancel();
+            return null;
+        }
+        return standby.handOver() ? standby : null;
+    }
+
+    public CompletableFuture<ZonedDateTime> playAsync(MusicResourceInfo resourceInfo, ZonedDateTime startTime) {
+        StandbyTrack standby = takeStandby(resourceInfo, startTime);
         synchronized (StreamAudioPlayer.class) {
             try {
-                currentUrlString = urlString;
-                currentFormatType = formatType;
+                currentResourceInfo = resourceInfo;
                 currentStartTime = startTime == null ? ZonedDateTime.now() : startTime;
-                stop(); // 先停止之前的播放
+                stopPlayback(); // 先停止之前的播放
 
                 source = AL10.alGenSources();
                 checkALError("alGenSources");
@@ -136,22 +250,43 @@ public class StreamAudioPlayer {
                 initialized.set(true);
             } catch (Exception e) {
                 cleanup();
+                if (standby != null) standby.cancel();
                 return CompletableFuture.failedFuture(e);
             }
 
-            // 清空缓冲区
-            audioBuffer.clear();
-            totalBufferedBytes.set(0);
+            PcmRingBuffer ringBuffer;
+            if (standby != null) {
+                LOGGER.debug("Starting from prefetched standby track");
+                ringBuffer = standby.getRingBuffer();
+                currentDecoder = standby.getDecoder();
+            } else {
+                ringBuffer = new PcmRingBuffer(RING_CAPACITY);
+            }
+            this.ringBuffer = ringBuffer;
+            ringStartMillis = 0;
             shouldContinuePlaying = true;
             shouldContinueDownloading = true;
             serverStartTime = startTime == null ? ZonedDateTime.now() : startTime;
+            serverStartNanos = System.nanoTime()
+                    - (startTime == null ? 0 : Duration.between(startTime, ZonedDateTime.now()).toNanos());
+            alignToServer = startTime != null;
+            prebufferMillis = -1;
+            driftCorrector.reset();
+            lastPitch = 1;
+            rebuffering = false;
+            driftPausedUntilNanos = 0;
+            pendingDropBytes = 0;
+            resyncRequested = false;
+            discontinuityCursor = -1;
+            long loadStartNanos = System.nanoTime();
+            boolean coldStart = standby == null;
 
             CompletableFuture<ZonedDateTime> startPlayingFuture = new CompletableFuture<>();
 
             downloadFuture = MusicHud.EXECUTOR.submit(() -> {
                 Thread.currentThread().setName("Downloader");
                 try {
-                    downloadAudioWithRetry(urlString, formatType, startTime != null);
+                    downloadAudioWithRetry(resourceInfo, startTime != null, ringBuffer, standby);
                 } catch (Exception e) {
                     LOGGER.error("Download thread error", e);
                     setStatus(Status.ERROR);
@@ -166,7 +301,7 @@ public class StreamAudioPlayer {
             playingFuture = MusicHud.EXECUTOR.submit(() -> {
                 Thread.currentThread().setName("Music Player");
                 try {
-                    playAudioWithRetry(startPlayingFuture);
+                    playAudioWithRetry(startPlayingFuture, ringBuffer, coldStart ? loadStartNanos : -1);
                 } catch (Exception e) {
                     LOGGER.error("Play thread error", e);
                     if (!startPlayingFuture.isDone()) {
@@ -179,137 +314,58 @@ public class StreamAudioPlayer {
         }
     }
 
-    private void playAudioWithRetry(CompletableFuture<ZonedDateTime> startPlayingFuture) {
-        boolean finished = false;
+    /**
+     * @param loadStartNanos 冷启动时开始加载的时间，用于测量预缓冲耗时；从备用轨道开始时为 -1
+     */
+    private void playAudioWithRetry(CompletableFuture<ZonedDateTime> startPlayingFuture, PcmRingBuffer ringBuffer,
+                                    long loadStartNanos) {
         try {
-            // 等待一些数据缓冲
-            while (shouldContinuePlaying && totalBufferedBytes.get() < BUFFER_SIZE * BUFFER_COUNT) {
-                Thread.sleep(50);
+            // 等待缓冲到目标水位，格式确定前目标为任意数据
+            LOGGER.debug("Jitter buffer target {} ms", jitterBufferTarget.targetMillis());
+            long targetBytes;
+            while (shouldContinuePlaying && ringBuffer.bufferedBytes() < (targetBytes = targetBufferBytes(ringBuffer))
+                    && !ringBuffer.isEndOfStream()) {
+                ringBuffer.awaitReadable(targetBytes, TimeUnit.MILLISECONDS.toNanos(500));
             }
+            if (loadStartNanos >= 0 && ringBuffer.bufferedBytes() > 0) {
+                prebufferMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartNanos);
+            }
+            waitForScheduledStart(ringBuffer);
 
-            if (totalBufferedBytes.get() == 0) {
+            if (ringBuffer.bufferedBytes() == 0) {
                 LOGGER.error("No audio data available");
                 setStatus(Status.ERROR);
                 startPlayingFuture.completeExceptionally(new IOException("No audio data available"));
-            } else {
-                synchronized (StreamAudioPlayer.class) {
-                    if (!initialized.get() || source == 0) {
-                        startPlayingFuture.completeExceptionally(new IllegalStateException("Audio player not initialized"));
-                        finished = true;
-                    } else {// 从缓冲区填充初始数据
-                        for (int i = 0; i < BUFFER_COUNT; i++) {
-                            byte[] audioData = audioBuffer.poll(1, TimeUnit.SECONDS);
-                            if (audioData == null) break;
-
-                            ByteBuffer directBuffer = ByteBuffer.allocateDirect(audioData.length);
-                            directBuffer.put(audioData);
-                            directBuffer.flip();
-
-                            int format = currentDecoder != null ? currentDecoder.getFormat() : AL10.AL_FORMAT_STEREO16;
-                            int sampleRate = currentDecoder != null ? currentDecoder.getSampleRate() : 44100;
-
-                            AL10.alBufferData(buffers[i], format, directBuffer, sampleRate);
-                            checkALError("alBufferData");
-                            AL10.alSourceQueueBuffers(source, buffers[i]);
-                            checkALError("alSourceQueueBuffers");
-
-                            totalBufferedBytes.addAndGet(-audioData.length);
-                        }
-                        if (ClientConfigDefinition.disableVanillaMusic.get())
-                            Minecraft.getInstance().getSoundManager().stop(null, SoundSource.MUSIC);
-                        startPlayingFuture.complete(serverStartTime);
-                        setStatus(Status.PLAYING);
-                        AL10.alSourcePlay(source);
-                        checkALError("alSourcePlay");
-                    }
+                return;
+            }
 
+            boolean callbackMode;
+            synchronized (StreamAudioPlayer.class) {
+                if (!initialized.get() || source == 0) {
+                    startPlayingFuture.completeExceptionally(new IllegalStateException("Audio player not initialized"));
+                    return;
                 }
-                if (!finished) {// 主播放循环
-                    while (shouldContinuePlaying) {
-                        try {
-                            synchronized (StreamAudioPlayer.class) {
-                                updateVolumeIfNecessary();
-                                if (!initialized.get() || source == 0) break;
-
-                                int processed = AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
-                                checkALError("alGetSourcei");
-
-                                while (processed-- > 0) {
-                                    int[] buffer = new int[1];
-                                    AL10.alSourceUnqueueBuffers(source, buffer);
-                                    checkALError("alSourceUnqueueBuffers");
-
-                                    // 从缓冲区获取音频数据，最多等待500ms
-                                    byte[] audioData = audioBuffer.poll(500, TimeUnit.MILLISECONDS);
-
-                                    if (audioData == null) {
-                                        // 没有数据可用
-                                        if (audioBuffer.isEmpty() && NowPlayingInfo.getInstance().isCompleted()) {
-                                            // 播放已完成且缓冲区为空，结束播放
-                                            LOGGER.debug("No more audio data available");
-                                            shouldContinuePlaying = false;
-                                            isBuffering = false;
-                                            setStatus(Status.PLAYING);
-                                            break;
-                                        } else if (shouldContinueDownloading) {
-                                            audioData = new byte[BUFFER_SIZE];
-                                            isBuffering = true;
-                                            if (status.get() != Status.ERROR && status.get() != Status.RETRYING) {
-                                                setStatus(Status.BUFFERING);
-                                            }
-                                        } else {
-                                            audioData = new byte[BUFFER_SIZE];
-                                            isBuffering = false;
-                                        }
-                                    } else {
-                                        isBuffering = false;
-                                        setStatus(Status.PLAYING);
-                                    }
-
-                                    ByteBuffer directBuffer = ByteBuffer.allocateDirect(audioData.length);
-                                    directBuffer.put(audioData);
-                                    directBuffer.flip();
-
-                                    int format = currentDecoder != null ? currentDecoder.getFormat() : AL10.AL_FORMAT_STEREO16;
-                                    int sampleRate = currentDecoder != null ? currentDecoder.getSampleRate() : 44100;
-
-                                    AL10.alBufferData(buffer[0], format, directBuffer, sampleRate);
-                                    checkALError("alBufferData");
-                                    AL10.alSourceQueueBuffers(source, buffer[0]);
-                                    checkALError("alSourceQueueBuffers");
-
-                                    if (audioData.length == BUFFER_SIZE) { // 不是静音数据
-                                        totalBufferedBytes.addAndGet(-audioData.length);
-                                    }
-                                }
-
-                                int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
-                                if (state != AL10.AL_PLAYING && shouldContinuePlaying) {
-                                    AL10.alSourcePlay(source);
-                                    checkALError("alSourcePlay");
-                                }
-                            }
-
-                            // 检查缓冲状态
-                            if (status.get() != Status.RETRYING && status.get() != Status.ERROR
-                                    && isBuffering && shouldContinueDownloading) {
-                                setStatus(Status.BUFFERING);
-                            }
-
-                            Thread.sleep(40);
-                        } catch (InterruptedException e) {
-                            break;
-                        } catch (Exception e) {
-                            LOGGER.error("Playback error: {}", e.getMessage(), e);
-                            try {
-                                fullyRetryCurrent();
-                            } catch (RuntimeException e1) {
-                                break;
-                            }
-                            break;
-                        }
-                    }
+                callbackMode = startCallbackSource(ringBuffer);
+                if (!callbackMode) {
+                    startQueuedSource(ringBuffer);
                 }
+                if (ClientConfigDefinition.disableVanillaMusic.get())
+                    Minecraft.getInstance().getSoundManager().stop(null, SoundSource.MUSIC);
+                AL10.alSourcePlay(source);
+                checkALError("alSourcePlay");
+                playbackClock.start(TimeUnit.MILLISECONDS.toNanos(ringStartMillis));
+                nextDriftCheckNanos = System.nanoTime() + DriftCorrector.SETTLE_NANOS;
+                startPlayingFuture.complete(serverStartTime);
+                setStatus(Status.PLAYING);
+            }
+            if (loadStartNanos >= 0) {
+                reportPlaybackStats();
+            }
+
+            if (callbackMode) {
+                monitorCallbackSource(ringBuffer);
+            } else {
+                refillQueuedSource(ringBuffer);
             }
         } catch (InterruptedException ignored) {
         } catch (Exception e) {
@@ -323,87 +379,419 @@ public class StreamAudioPlayer {
         }
     }
 
-    private void downloadAudioWithRetry(String urlString, FormatType formatType, boolean forceSync) {
+    /**
+     * 提前到达时等到服务器安排的开始时刻；迟到时丢弃迟到部分的 PCM，从其他客户端正在播放的位置开始
+     */
+    private void waitForScheduledStart(PcmRingBuffer ringBuffer) throws InterruptedException {
+        AudioDecoder decoder = currentDecoder;
+        if (!alignToServer || decoder == null) return;
+        int bytesPerFrame = getBytesPerSample(decoder.getFormat());
+        long bytesPerSecond = (long) decoder.getSampleRate() * bytesPerFrame;
+        if (bytesPerSecond <= 0) return;
+        long startNanos = TimeUnit.MILLISECONDS.toNanos(ringStartMillis);
+        long droppedBytes = 0;
+        while (shouldContinuePlaying) {
+            long positionNanos = startNanos + droppedBytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+            long behindNanos = System.nanoTime() - serverStartNanos - positionNanos;
+            if (behindNanos < 0) {
+                if (droppedBytes == 0) {
+                    long waitNanos = -behindNanos;
+                    long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(MAX_SCHEDULED_WAIT_MILLIS);
+                    if (waitNanos > maxWaitNanos) {
+                        LOGGER.warn("Scheduled start is {} ms away, starting in {} ms instead",
+                                TimeUnit.NANOSECONDS.toMillis(waitNanos), MAX_SCHEDULED_WAIT_MILLIS);
+                        waitNanos = maxWaitNanos;
+                    }
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                break;
+            }
+            long behindBytes = behindNanos * bytesPerSecond / TimeUnit.SECONDS.toNanos(1) / bytesPerFrame * bytesPerFrame;
+            if (behindBytes == 0 || droppedBytes >= bytesPerSecond * MAX_CATCH_UP_MILLIS / 1000) break;
+            long available = ringBuffer.bufferedBytes() / bytesPerFrame * bytesPerFrame;
+            if (available == 0) {
+                if (ringBuffer.isEndOfStream()) break;
+                ringBuffer.awaitReadable(bytesPerFrame, TimeUnit.MILLISECONDS.toNanos(50));
+                continue;
+            }
+            int drop = (int) Math.min(behindBytes, available);
+            ringBuffer.commitRead(drop);
+            droppedBytes += drop;
+        }
+        if (droppedBytes > 0) {
+            LOGGER.debug("Dropped {} ms to catch up with scheduled start", droppedBytes * 1000 / bytesPerSecond);
+            ringStartMillis += droppedBytes * 1000 / bytesPerSecond;
+        }
+    }
+
+    /**
+     * OpenAL 支持 AL_SOFT_callback_buffer 时由混音线程直接从环形缓冲区取数据，不再需要轮询补充
+     */
+    private boolean startCallbackSource(PcmRingBuffer ringBuffer) {
+        if (!AL10.alIsExtensionPresent("AL_SOFT_callback_buffer")) return false;
+        int format = currentDecoder != null ? currentDecoder.getFormat() : AL10.AL_FORMAT_STEREO16;
+        int sampleRate = currentDecoder != null ? currentDecoder.getSampleRate() : 44100;
+        byte silence = format == AL10.AL_FORMAT_MONO8 || format == AL10.AL_FORMAT_STEREO8 ? (byte) 0x80 : 0;
+
+        int bytesPerFrame = getBytesPerSample(format);
+        callbackFrames = 0;
+        bufferCallback = SOFTCallbackBufferType.create((userPointer, sampleData, byteCount) -> {
+            if (pendingDropBytes > 0) {
+                dropPending(ringBuffer);
+            }
+            if (rebuffering) {
+                MemoryUtil.memSet(sampleData, silence, byteCount);
+                return byteCount;
+            }
+            int written = ringBuffer.drainTo(sampleData, byteCount);
+            // 只有混音线程写入
+            //noinspection NonAtomicOperationOnVolatileField
+            callbackFrames += written / bytesPerFrame;
+            if (written < byteCount) {
+                // 返回不足的字节数会让源停止，只有流真正结束时才这样做
+                if (ringBuffer.isDrained()) return written;
+                MemoryUtil.memSet(sampleData + written, silence, byteCount - written);
+            }
+            return byteCount;
+        });
+        SOFTCallbackBuffer.alBufferCallbackSOFT(buffers[0], format, sampleRate, bufferCallback, 0L);
+        checkALError("alBufferCallbackSOFT");
+        AL10.alSourcei(source, AL10.AL_BUFFER, buffers[0]);
+        checkALError("alSourcei");
+        LOGGER.debug("Using AL_SOFT_callback_buffer");
+        return true;
+    }
+
+    private void monitorCallbackSource(PcmRingBuffer ringBuffer) throws InterruptedException {
+        while (shouldContinuePlaying) {
+            synchronized (StreamAudioPlayer.class) {
+                updateVolumeIfNecessary();
+                if (!initialized.get() || source == 0) break;
+                int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
+                if (state != AL10.AL_PLAYING && ringBuffer.isDrained()) {
+                    LOGGER.debug("No more audio data available");
+                    finishPlayback();
+                    break;
+                }
+                checkRebuffered(ringBuffer);
+                boolean buffering = rebuffering || ringBuffer.bufferedBytes() == 0 && !ringBuffer.isEndOfStream();
+                updateBufferingStatus(buffering);
+                applyDiscontinuity(ringBuffer);
+                int sampleRate = currentDecoder != null ? currentDecoder.getSampleRate() : 44100;
+                playbackClock.update(TimeUnit.MILLISECONDS.toNanos(ringStartMillis)
+                        + PlaybackClock.framesToNanos(callbackFrames, sampleRate), state == AL10.AL_PLAYING && !buffering);
+                correctDrift(ringBuffer, state == AL10.AL_PLAYING && !buffering);
+            }
+            Thread.sleep(driftPausedUntilNanos == 0 ? CALLBACK_MONITOR_INTERVAL
+                    : Math.clamp(TimeUnit.NANOSECONDS.toMillis(driftPausedUntilNanos - System.nanoTime()), 1, CALLBACK_MONITOR_INTERVAL));
+        }
+    }
+
+    private void startQueuedSource(PcmRingBuffer ringBuffer) {
+        refillScheduler.clear();
+        unqueuedFrames = 0;
+        freeBufferCount = 0;
+        for (int buffer : buffers) {
+            if (ringBuffer.bufferedBytes() > 0) {
+                queueBuffer(buffer, ringBuffer);
+            } else {
+                freeBuffers[freeBufferCount++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * 只在队首缓冲区即将播完时醒来补充数据；等待数据时不持有锁
+     */
+    private void refillQueuedSource(PcmRingBuffer ringBuffer) throws InterruptedException {
+        while (shouldContinuePlaying) {
+            long waitNanos;
+            boolean starved;
+            synchronized (StreamAudioPlayer.class) {
+                updateVolumeIfNecessary();
+                if (!initialized.get() || source == 0) break;
+
+                int processed = AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
+                checkALError("alGetSourcei");
+                while (processed-- > 0) {
+                    freeBuffers[freeBufferCount++] = AL10.alSourceUnqueueBuffers(source);
+                    checkALError("alSourceUnqueueBuffers");
+                    unqueuedFrames += refillScheduler.onUnqueued();
+                }
+                if (pendingDropBytes > 0) {
+                    dropPending(ringBuffer);
+                }
+                while (checkRebuffered(ringBuffer) && freeBufferCount > 0 && ringBuffer.bufferedBytes() > 0) {
+                    queueBuffer(freeBuffers[--freeBufferCount], ringBuffer);
+                }
+
+                if (refillScheduler.queuedCount() == 0 && ringBuffer.isDrained()) {
+                    // 播放已完成且缓冲区为空，结束播放
+                    LOGGER.debug("No more audio data available");
+                    finishPlayback();
+                    break;
+                }
+                starved = freeBufferCount > 0 && !ringBuffer.isEndOfStream();
+                // 队列已空才是能听到的欠载
+                updateBufferingStatus(starved && refillScheduler.queuedCount() == 0);
+
+                int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
+                if (state != AL10.AL_PLAYING && refillScheduler.queuedCount() > 0 && driftPausedUntilNanos == 0) {
+                    AL10.alSourcePlay(source);
+                    checkALError("alSourcePlay");
+                }
+
+                int sampleRate = currentDecoder != null ? currentDecoder.getSampleRate() : 44100;
+                // 偏移相对于队列中第一个尚未移除的缓冲区
+                int sampleOffset = refillScheduler.queuedCount() == 0 ? 0 : AL10.alGetSourcei(source, AL11.AL_SAMPLE_OFFSET);
+                applyDiscontinuity(ringBuffer);
+                boolean running = refillScheduler.queuedCount() > 0 && driftPausedUntilNanos == 0;
+                playbackClock.update(TimeUnit.MILLISECONDS.toNanos(ringStartMillis)
+                        + PlaybackClock.framesToNanos(unqueuedFrames + sampleOffset, sampleRate), running);
+                correctDrift(ringBuffer, running && !starved);
+                waitNanos = refillScheduler.queuedCount() == 0 ? RefillScheduler.MAX_WAIT_NANOS
+                        : refillScheduler.nanosUntilNextDrain(sampleOffset, sampleRate);
+                if (driftPausedUntilNanos != 0) {
+                    waitNanos = Math.clamp(driftPausedUntilNanos - System.nanoTime(),
+                            RefillScheduler.MIN_WAIT_NANOS, RefillScheduler.MAX_WAIT_NANOS);
+                }
+            }
+
+            if (starved) {
+                // 数据到达时由下载线程唤醒
+                ringBuffer.awaitReadable(rebuffering ? targetBufferBytes(ringBuffer) : queuedBufferBytes() / 4, waitNanos);
+            } else {
+                Thread.sleep(Duration.ofNanos(waitNanos));
+            }
+        }
+    }
+
+    /**
+     * 定期比较播放时钟和服务器时间轴：小误差微调 AL_PITCH；超前太多时暂停等待，
+     * 落后太多时丢弃缓冲的 PCM，缓冲不够丢弃时让下载线程重新定位。只在播放线程持有锁时调用
+     */
+    private void correctDrift(PcmRingBuffer ringBuffer, boolean playing) {
+        if (!alignToServer) return;
+        long now = System.nanoTime();
+        if (driftPausedUntilNanos != 0) {
+            if (now < driftPausedUntilNanos) return;
+            driftPausedUntilNanos = 0;
+            AL10.alSourcePlay(source);
+            checkALError("alSourcePlay");
+            nextDriftCheckNanos = now + DriftCorrector.SETTLE_NANOS;
+            return;
+        }
+        if (!playing || now < nextDriftCheckNanos || pendingDropBytes > 0 || resyncRequested
+                || discontinuityCursor >= 0) {
+            return;
+        }
+        nextDriftCheckNanos = now + DriftCorrector.CHECK_INTERVAL_NANOS;
+        long errorNanos = playbackClock.positionNanos() - (now - serverStartNanos);
+        if (!driftCorrector.needsHardResync(errorNanos)) {
+            setPitch(driftCorrector.update(errorNanos));
+            return;
+        }
+
+        driftCorrector.reset();
+        setPitch(1);
+        nextDriftCheckNanos = now + DriftCorrector.SETTLE_NANOS;
+        AudioDecoder decoder = currentDecoder;
+        int bytesPerFrame = decoder != null ? getBytesPerSample(decoder.getFormat()) : 4;
+        long bytesPerSecond = (long) (decoder != null ? decoder.getSampleRate() : 44100) * bytesPerFrame;
+        if (errorNanos > 0) {
+            LOGGER.debug("Playback {} ms ahead of server, pausing", TimeUnit.NANOSECONDS.toMillis(errorNanos));
+            AL10.alSourcePause(source);
+            checkALError("alSourcePause");
+            driftPausedUntilNanos = now + errorNanos;
+            playbackClock.update(playbackClock.positionNanos(), false);
+            return;
+        }
+        long behindBytes = -errorNanos * bytesPerSecond / TimeUnit.SECONDS.toNanos(1) / bytesPerFrame * bytesPerFrame;
+        if (behindBytes <= ringBuffer.bufferedBytes() / bytesPerFrame * bytesPerFrame) {
+            LOGGER.debug("Playback {} ms behind server, dropping buffered audio", TimeUnit.NANOSECONDS.toMillis(-errorNanos));
+            ringStartMillis += behindBytes * 1000 / bytesPerSecond;
+            pendingDropBytes = behindBytes;
+        } else {
+            LOGGER.debug("Playback {} ms behind server, seeking", TimeUnit.NANOSECONDS.toMillis(-errorNanos));
+            resyncRequested = true;
+        }
+    }
+
+    /**
+     * 由当前的消费方（播放线程或混音线程）丢弃 {@link #pendingDropBytes}，不分配对象
+     */
+    private void dropPending(PcmRingBuffer ringBuffer) {
+        long pending = pendingDropBytes;
+        int drop = (int) Math.min(pending, ringBuffer.bufferedBytes());
+        ringBuffer.commitRead(drop);
+        pendingDropBytes = pending - drop;
+    }
+
+    private void applyDiscontinuity(PcmRingBuffer ringBuffer) {
+        long cursor = discontinuityCursor;
+        if (cursor >= 0 && ringBuffer.readPosition() >= cursor) {
+            ringStartMillis += discontinuityShiftMillis;
+            discontinuityCursor = -1;
+            nextDriftCheckNanos = System.nanoTime() + DriftCorrector.SETTLE_NANOS;
+        }
+    }
+
+    /**
+     * 目标缓冲时长对应的字节数，不超过环形缓冲区的一半，留出空间给下载线程
+     */
+    private long targetBufferBytes(PcmRingBuffer ringBuffer) {
+        return Math.min(ringBuffer.bytesForMillis(jitterBufferTarget.targetMillis()), RING_CAPACITY / 2);
+    }
+
+    /**
+     * @return 没有在欠载后重新缓冲，可以继续播放
+     */
+    private boolean checkRebuffered(PcmRingBuffer ringBuffer) {
+        if (rebuffering && (ringBuffer.bufferedBytes() >= targetBufferBytes(ringBuffer) || ringBuffer.isEndOfStream())) {
+            LOGGER.debug("Rebuffered {} ms", ringBuffer.bufferedMillis());
+            rebuffering = false;
+        }
+        return !rebuffering;
+    }
+
+    private void setPitch(float pitch) {
+        if (lastPitch != pitch && source != 0) {
+            AL10.alSourcef(source, AL10.AL_PITCH, pitch);
+            checkALError("alSourcef");
+            lastPitch = pitch;
+        }
+    }
+
+    private void finishPlayback() {
+        playbackClock.update(playbackClock.positionNanos(), false);
+        shouldContinuePlaying = false;
+        isBuffering = false;
+        setStatus(Status.PLAYING);
+    }
+
+    private void updateBufferingStatus(boolean buffering) {
+        boolean wasBuffering = isBuffering;
+        isBuffering = buffering;
+        if (buffering && shouldContinueDownloading) {
+            if (!wasBuffering) {
+                rebuffering = true;
+                jitterBufferTarget.onUnderrun();
+                underruns.incrementAndGet();
+                reportPlaybackStats();
+            }
+            if (status.get() != Status.ERROR && status.get() != Status.RETRYING) {
+                setStatus(Status.BUFFERING);
+            }
+        } else if (!buffering) {
+            setStatus(Status.PLAYING);
+        }
+    }
+
+    private void downloadAudioWithRetry(MusicResourceInfo resourceInfo, boolean forceSync, PcmRingBuffer ringBuffer,
+                                        StandbyTrack standby) throws Exception {
         int localRetryCount = 0;
-        boolean forceSyncInternal = forceSync;
+        // 备用轨道已从开头解码，迟到部分由播放线程丢弃
+        boolean forceSyncInternal = forceSync && standby == null;
+        // 已交给播放线程的位置，断点续传失败后从这里继续而不是重新对齐服务器时间
+        long resumeMillis = -1;
+
+        // 同一个源在重试间复用，保留 Range 支持情况和 If-Range 校验值；启用缓存时可能是本地文件
+        AudioSource source = standby != null ? standby.getSource() : AudioCache.getInstance().open(resourceInfo);
+        source.setResumeListener(() -> setStatus(Status.RETRYING));
+        currentAudioSource = source;
+        // 备用轨道已解码的部分直接沿用
+        AudioDecoder standbyDecoder = standby != null ? standby.getDecoder() : null;
+        // 备用轨道的缓冲区从歌曲开头开始
+        boolean ringStarted = standby != null;
 
         while (shouldContinueDownloading) {
+            long sessionStartMillis = 0;
+            long deliveredBytes = 0;
+            int pcmBytesPerSecond = 0;
             try {
                 LOGGER.debug("Starting audio download (attempt {})", localRetryCount + 1);
 
-                AudioDecoder decoder = loadAudioDecoder(urlString, formatType);
+                AudioDecoder decoder;
+                if (standbyDecoder != null) {
+                    decoder = standbyDecoder;
+                    deliveredBytes = standby.getDeliveredBytes();
+                    standbyDecoder = null;
+                } else {
+                    decoder = loadAudioDecoder(source, resourceInfo.getType());
+                }
+                AudioDecoder previousDecoder = currentDecoder;
                 currentDecoder = decoder;
+                if (previousDecoder != null && previousDecoder != decoder) {
+                    previousDecoder.close();
+                }
 
                 if (status.get() != Status.ERROR && status.get() != Status.RETRYING) {
                     setStatus(Status.BUFFERING);
                 }
 
-                if (forceSyncInternal) {
-                    int bytesPerSample = getBytesPerSample(decoder.getFormat());
-                    int bytesPerSecond = decoder.getSampleRate() * bytesPerSample;
-
-                    long bytesSkipped = 0;
-                    while (shouldContinueDownloading) {
-                        long seconds = Duration.between(serverStartTime, ZonedDateTime.now()).getSeconds();
-                        long skipBytes = seconds
-                                * bytesPerSecond;
-                        if (bytesSkipped >= skipBytes) {
-                            break;
-                        }
-                        byte[] chunk = decoder.readChunk(BUFFER_SIZE);
-                        if (chunk == null) break;
-                        bytesSkipped += chunk.length;
-                    }
-                    LOGGER.debug("Skipped {} bytes", bytesSkipped);
+                if (resumeMillis > 0) {
+                    final long target = resumeMillis;
+                    sessionStartMillis = syncToPosition(decoder, source, resourceInfo, () -> target, 0);
+                } else if (forceSyncInternal) {
+                    sessionStartMillis = syncToPosition(decoder, source, resourceInfo,
+                            () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - serverStartNanos), 0);
                 }
 
-                // 先填充一些数据到缓冲区
-                int initialBuffers = 0;
-                long startTimeForSpeedCalc = System.currentTimeMillis();
-                long totalBytesForSpeedCalc = 0;
-                while (shouldContinueDownloading && initialBuffers < BUFFER_COUNT * 2) {
-                    byte[] audioData = decoder.readChunk(BUFFER_SIZE);
-                    if (audioData == null) break;
-
-                    if (!audioBuffer.offer(audioData, 100, TimeUnit.MILLISECONDS)) {
-                        // 缓冲区满，继续尝试
-                        continue;
-                    }
-                    totalBufferedBytes.addAndGet(audioData.length);
-                    initialBuffers++;
-                    totalBytesForSpeedCalc += audioData.length;
-
-                    if (initialBuffers == 5) { // 收集5个数据块后计算速度
-                        long elapsedTime = System.currentTimeMillis() - startTimeForSpeedCalc;
-                        if (elapsedTime > 0) {
-                            bytesPerSecond = (totalBytesForSpeedCalc * 1000L) / elapsedTime;
-                            LOGGER.debug("Calculated download speed: {} bytes/sec", bytesPerSecond);
+                // 每段会话的第一次读取包含建立连接的耗时，不计入波动
+                boolean firstRead = true;
+                jitterBufferTarget.onDiscontinuity();
+                while (shouldContinueDownloading && !ringBuffer.isEndOfStream()) {
+                    if (resyncRequested && pcmBytesPerSecond > 0) {
+                        resyncRequested = false;
+                        long writtenMillis = sessionStartMillis + deliveredBytes * 1000 / pcmBytesPerSecond;
+                        long cursor = ringBuffer.writePosition();
+                        // 缓冲区中剩下的数据播完时服务器所在的位置
+                        long positionMillis = syncToPosition(decoder, source, resourceInfo, () ->
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - serverStartNanos) + ringBuffer.bufferedMillis(),
+                                writtenMillis);
+                        if (positionMillis > writtenMillis) {
+                            LOGGER.debug("Resynced from {} ms to {} ms", writtenMillis, positionMillis);
+                            sessionStartMillis = positionMillis;
+                            deliveredBytes = 0;
+                            discontinuityShiftMillis = positionMillis - writtenMillis;
+                            discontinuityCursor = cursor;
                         }
+                        firstRead = true;
+                        jitterBufferTarget.onDiscontinuity();
                     }
-
-                    if (calculateBufferedSeconds(decoder.getFormat()) >= 2) {
-                        setStatus(Status.PLAYING);
+                    // 缓冲区满时挂起，由播放线程取走数据后唤醒
+                    if (!ringBuffer.awaitWritable(SKIP_CHUNK_SIZE)) break;
+                    long readStartNanos = System.nanoTime();
+                    int read = decoder.readInto(ringBuffer.writableSlice());
+                    if (read < 0) {
+                        ringBuffer.markEndOfStream();
+                        break;
                     }
-                }
-
-                // 继续下载剩余数据
-                while (shouldContinueDownloading) {
-                    byte[] audioData = decoder.readChunk(BUFFER_SIZE);
-
-                    // 如果缓冲区已满，等待一会儿
-                    while (shouldContinueDownloading && audioBuffer.remainingCapacity() == 0) {
-                        Thread.sleep(50);
+                    // MP3 解码出第一帧后才能确定格式
+                    int bytesPerSample = getBytesPerSample(decoder.getFormat());
+                    pcmBytesPerSecond = decoder.getSampleRate() * bytesPerSample;
+                    if (!firstRead && pcmBytesPerSecond > 0) {
+                        jitterBufferTarget.onDecoded(read * TimeUnit.SECONDS.toNanos(1) / pcmBytesPerSecond,
+                                System.nanoTime() - readStartNanos);
                     }
-                    if (audioData == null) continue;
-
-                    if (!shouldContinueDownloading) break;
+                    firstRead = false;
+                    ringBuffer.setFormat(decoder.getSampleRate(), bytesPerSample);
+                    if (!ringStarted) {
+                        ringStartMillis = sessionStartMillis;
+                        ringStarted = true;
+                    }
+                    ringBuffer.commitWrite(read);
+                    deliveredBytes += read;
 
-                    audioBuffer.put(audioData);
-                    totalBufferedBytes.addAndGet(audioData.length);
+                    if (status.get() == Status.BUFFERING && !rebuffering
+                            && ringBuffer.bufferedBytes() >= targetBufferBytes(ringBuffer)) {
+                        setStatus(Status.PLAYING);
+                    }
                 }
 
                 // 下载完成
                 LOGGER.debug("Audio download completed");
+                reportPlaybackStats();
                 break;
             } catch (InterruptedException e) {
                 LOGGER.debug("Download stopped by interruption");
@@ -412,10 +800,16 @@ public class StreamAudioPlayer {
                 LOGGER.debug("Download stopped by index out of bounds");
                 break;
             } catch (Exception e) {
-                if (e instanceof SocketException e1 && e1.getMessage().equals("Closed by interrupt")) break;
+                if (e instanceof SocketException e1 && "Closed by interrupt".equals(e1.getMessage())) break;
+                if (e instanceof InterruptedIOException) break;
                 LOGGER.error("Download error (attempt {})\n{} : {}", localRetryCount + 1, e.getClass().getSimpleName(), e.getMessage());
 
-                forceSyncInternal = true;
+                // 流内断点续传已失败，从已送出的 PCM 位置重新定位；OpenAL 队列保持不动
+                if (pcmBytesPerSecond > 0 && (deliveredBytes > 0 || resumeMillis > 0)) {
+                    resumeMillis = Math.max(resumeMillis, sessionStartMillis + deliveredBytes * 1000 / pcmBytesPerSecond);
+                } else {
+                    forceSyncInternal = true;
+                }
                 localRetryCount++;
                 setStatus(Status.RETRYING);
 
@@ -434,6 +828,74 @@ public class StreamAudioPlayer {
         LOGGER.debug("Download task finished");
     }
 
+    /**
+     * 定位到 targetMillis 提供的位置；目标随时间变化时（对齐服务器时间）会补偿定位耗时
+     *
+     * @param currentMillis 解码器当前的位置，无法定位时从这里解码并丢弃
+     * @return 实际定位到的播放位置（毫秒）
+     */
+    private long syncToPosition(AudioDecoder decoder, AudioSource source, MusicResourceInfo resourceInfo,
+                                LongSupplier targetMillis, long currentMillis) throws IOException {
+        long elapsedMillis = targetMillis.getAsLong();
+        if (elapsedMillis <= currentMillis) return currentMillis;
+
+        // 优先精确定位，其次用 Range 请求跳到估算位置
+        long positionMillis = decoder.seekToMillis(elapsedMillis);
+        if (positionMillis >= 0) {
+            LOGGER.debug("Seeked to {} ms", positionMillis);
+        } else {
+            long byteOffset = estimateByteOffset(resourceInfo, source.getContentLength(), elapsedMillis);
+            if (byteOffset > 0 && decoder.seekToByte(byteOffset)) {
+                LOGGER.debug("Seeked to byte {} for {} ms", byteOffset, elapsedMillis);
+                positionMillis = elapsedMillis;
+            } else {
+                positionMillis = currentMillis;
+            }
+        }
+
+        // 补偿定位期间流逝的时间；无法定位时退回到解码并丢弃
+        int bytesPerSample = getBytesPerSample(decoder.getFormat());
+        int bytesPerSecond = decoder.getSampleRate() * bytesPerSample;
+
+        long bytesSkipped = 0;
+        ByteBuffer skipBuffer = ByteBuffer.allocate(SKIP_CHUNK_SIZE);
+        while (shouldContinueDownloading) {
+            long behindMillis = targetMillis.getAsLong() - positionMillis;
+            if (bytesSkipped * 1000 / bytesPerSecond >= behindMillis) {
+                break;
+            }
+            skipBuffer.clear();
+            int read = decoder.readInto(skipBuffer);
+            if (read <= 0) break;
+            bytesSkipped += read;
+        }
+        LOGGER.debug("Skipped {} bytes", bytesSkipped);
+        return positionMillis + bytesSkipped * 1000 / bytesPerSecond;
+    }
+
+    /**
+     * 直接从环形缓冲区上传一段 PCM 数据并加入播放队列
+     */
+    private void queueBuffer(int alBuffer, PcmRingBuffer ringBuffer) {
+        int format = currentDecoder != null ? currentDecoder.getFormat() : AL10.AL_FORMAT_STEREO16;
+        int sampleRate = currentDecoder != null ? currentDecoder.getSampleRate() : 44100;
+
+        ByteBuffer data = ringBuffer.readableSlice(queuedBufferBytes());
+        int length = data.remaining();
+        AL10.alBufferData(alBuffer, format, data, sampleRate);
+        checkALError("alBufferData");
+        ringBuffer.commitRead(length);
+        AL10.alSourceQueueBuffers(source, alBuffer);
+        checkALError("alSourceQueueBuffers");
+        refillScheduler.onQueued(length / getBytesPerSample(format));
+    }
+
+    private int queuedBufferBytes() {
+        int format = currentDecoder != null ? currentDecoder.getFormat() : AL10.AL_FORMAT_STEREO16;
+        int sampleRate = currentDecoder != null ? currentDecoder.getSampleRate() : 44100;
+        return sampleRate * BUFFER_MILLIS / 1000 * getBytesPerSample(format);
+    }
+
     private void updateVolumeIfNecessary() {
         float musicVolume = Minecraft.getInstance().options.getSoundSourceVolume(SoundSource.MUSIC);
         if (lastVolume != musicVolume && source != 0 && AL10.alIsSource(source)) {
@@ -442,7 +904,7 @@ public class StreamAudioPlayer {
         }
     }
 
-    private int getBytesPerSample(int format) {
+    static int getBytesPerSample(int format) {
         return switch (format) {
             case AL10.AL_FORMAT_MONO8 -> 1;
             case AL10.AL_FORMAT_MONO16 -> 2;
@@ -452,16 +914,6 @@ public class StreamAudioPlayer {
         };
     }
 
-    private float calculateBufferedSeconds(int format) {
-        if (bytesPerSecond == 0) return 0;
-        int bytesPerSample = getBytesPerSample(format);
-        long samplesPerSecond = bytesPerSecond / bytesPerSample;
-        if (samplesPerSecond == 0) return 0;
-
-        long bufferedSamples = totalBufferedBytes.get() / bytesPerSample;
-        return (float) bufferedSamples / samplesPerSecond;
-    }
-
     private void checkALError(String operation) {
         int error = AL10.alGetError();
         if (error != AL10.AL_NO_ERROR) {
@@ -484,8 +936,18 @@ public class StreamAudioPlayer {
 
     @SneakyThrows
     public void stop() {
+        StandbyTrack standby = standbyTrack;
+        standbyTrack = null;
+        if (standby != null) {
+            standby.cancel();
+        }
+        stopPlayback();
+    }
+
+    private void stopPlayback() {
         shouldContinuePlaying = false;
         shouldContinueDownloading = false;
+        playbackClock.reset();
 
         // 取消任务
         if (playingFuture != null) {
@@ -507,6 +969,12 @@ public class StreamAudioPlayer {
             currentDecoder = null;
         }
 
+        AudioSource audioSource = currentAudioSource;
+        currentAudioSource = null;
+        if (audioSource != null) {
+            audioSource.close();
+        }
+
         lastVolume = 1;
         setStatus(Status.IDLE);
         cleanup();
@@ -524,8 +992,7 @@ public class StreamAudioPlayer {
 
                     int processed = AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
                     while (processed-- > 0) {
-                        int[] buffer = new int[1];
-                        AL10.alSourceUnqueueBuffers(source, buffer);
+                        AL10.alSourceUnqueueBuffers(source);
                         try {
                             checkALError("alSourceUnqueueBuffers");
                         } catch (Exception ignored) {
@@ -558,9 +1025,16 @@ public class StreamAudioPlayer {
                 initialized.set(false);
                 lastVolume = 1;
 
-                // 清空缓冲区
-                audioBuffer.clear();
-                totalBufferedBytes.set(0);
+                if (bufferCallback != null) {
+                    // 源和缓冲区删除后混音线程不会再调用回调
+                    bufferCallback.free();
+                    bufferCallback = null;
+                }
+
+                if (ringBuffer != null) {
+                    ringBuffer.close();
+                    ringBuffer = null;
+                }
 
                 LOGGER.debug("Cleanup completed");
             } catch (Exception e) {
@@ -571,8 +1045,32 @@ public class StreamAudioPlayer {
 
     // 获取当前缓冲状态（秒）
     public float getBufferedSeconds() {
-        if (currentDecoder == null) return 0;
-        return calculateBufferedSeconds(currentDecoder.getFormat());
+        PcmRingBuffer ringBuffer = this.ringBuffer;
+        if (ringBuffer == null) return 0;
+        return ringBuffer.bufferedMillis() / 1000f;
+    }
+
+    /**
+     * 把测得的吞吐量、欠载次数和预缓冲耗时交给监听器，服务器据此选择之后发给本客户端的音质和切歌提前量
+     */
+    private void reportPlaybackStats() {
+        MusicResourceInfo resourceInfo = currentResourceInfo;
+        AudioSource audioSource = currentAudioSource;
+        if (resourceInfo == null || audioSource == null) return;
+        long bytesPerSecond = audioSource.getMeasuredBytesPerSecond();
+        int underruns = this.underruns.getAndSet(0);
+        long prebufferMillis = this.prebufferMillis;
+        this.prebufferMillis = -1;
+        // 本地缓存播放且没有欠载时没有可上报的内容
+        if (bytesPerSecond <= 0 && underruns == 0 && prebufferMillis < 0) return;
+        PlaybackStats stats = new PlaybackStats(resourceInfo.getId(), Math.max(0, bytesPerSecond), underruns,
+                prebufferMillis);
+        LOGGER.debug("Measured {} KB/s, {} underruns, prebuffered in {} ms",
+                stats.bytesPerSecond() / 1024, underruns, prebufferMillis);
+        playbackStatsListener.forEach(c -> c.accept(stats));
+    }
+
+    public record PlaybackStats(long musicId, long bytesPerSecond, int underruns, long prebufferMillis) {
     }
 
     public enum Status {
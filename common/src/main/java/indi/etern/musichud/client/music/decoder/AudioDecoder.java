@@ -1,8 +1,49 @@
 package indi.etern.musichud.client.music.decoder;
 
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 public interface AudioDecoder extends AutoCloseable {
-    byte[] readChunk(int maxSize);
+    /**
+     * 将小端 PCM 直接解码到 dst 的剩余空间，只写入完整的采样帧，
+     * 解码出但放不下的数据留到下次调用
+     *
+     * @return 写入的字节数，流结束时返回 -1
+     */
+    int readInto(ByteBuffer dst) throws IOException;
+
+    /**
+     * 兼容旧接口，每次调用都会分配新数组，播放路径应使用 {@link #readInto(ByteBuffer)}
+     */
+    @SneakyThrows
+    default byte[] readChunk(int maxSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(maxSize).order(ByteOrder.LITTLE_ENDIAN);
+        int read = readInto(buffer);
+        if (read <= 0) return null;
+        return read == maxSize ? buffer.array() : Arrays.copyOf(buffer.array(), read);
+    }
+
     int getFormat();
     int getSampleRate();
+
+    /**
+     * 从编码数据的指定字节偏移处重新打开，并在下一个有效帧处重新同步
+     *
+     * @return 数据源不支持重新定位时返回 false
+     */
+    boolean seekToByte(long byteOffset) throws IOException;
+
+    /**
+     * 精确定位到指定播放时间
+     *
+     * @return 实际定位到的毫秒数，不支持精确定位时返回 -1
+     */
+    default long seekToMillis(long millis) throws IOException {
+        return -1;
+    }
     void close();
 }
@@ -1,9 +1,8 @@
 package indi.etern.musichud.client.music.decoder;
 
-import lombok.SneakyThrows;
+import indi.etern.musichud.client.music.stream.AudioSource;
 import org.jflac.FLACDecoder;
 import org.jflac.frame.Frame;
-import org.jflac.metadata.StreamInfo;
 import org.jflac.util.ByteData;
 import org.lwjgl.openal.AL10;
 
@@ -11,23 +10,52 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
-public class FLACStreamDecoder implements AudioDecoder {
-    private final FLACDecoder decoder;
-    private final BufferedInputStream inputStream;
+public class FLACStreamDecoder implements HighResolutionDecoder {
+    private static final int PROBE_MIN_SIZE = 16384;
+    private static final int MAX_PROBES = 32;
+    private final AudioSource source;
+    private final FlacMetadata metadata;
     private final int format;
     private final int sampleRate;
+    // 多核时由 FlacFramePipeline 并行解码，否则由 jflac 在调用线程逐帧解码
+    private final boolean parallel;
+    private FLACDecoder decoder;
+    private FlacFramePipeline pipeline;
+    private BufferedInputStream inputStream;
     private boolean convert24bitsTo16bits = false;
+    // 直接通过 readInto 降到 16 位时使用，经过 PcmStage 时由它负责抖动
+    private final TpdfDither dither = new TpdfDither();
+    // 定位后需要丢弃的样本数（每声道），实现样本级精确定位
+    private long pendingSkipSamples = 0;
+    // 一个采样帧（所有声道）在 jflac 输出和 OpenAL 输入中的字节数
+    private final int inputFrameBytes;
+    private final int outputFrameBytes;
+    // 已解码但尚未写出的数据
+    private byte[] pending;
+    private int pendingOffset;
+    private int pendingLength = 0;
+    private boolean endOfStream = false;
 
-    public FLACStreamDecoder(BufferedInputStream inputStream) throws IOException {
+    public FLACStreamDecoder(BufferedInputStream inputStream, AudioSource source) throws IOException {
+        this(inputStream, source, FlacFramePipeline.POOL_SIZE > 1);
+    }
+
+    public FLACStreamDecoder(BufferedInputStream inputStream, AudioSource source, boolean parallel) throws IOException {
         this.inputStream = inputStream;
-        this.decoder = new FLACDecoder(inputStream);
+        this.source = source;
+        this.parallel = parallel;
 
         // 读取FLAC流信息
         try {
-            StreamInfo streamInfo = decoder.readStreamInfo();
-            this.sampleRate = streamInfo.getSampleRate();
-            int channels = streamInfo.getChannels();
-            int bitsPerSample = streamInfo.getBitsPerSample();
+            this.metadata = FlacMetadata.read(inputStream);
+            if (parallel) {
+                this.pipeline = new FlacFramePipeline(inputStream, metadata);
+            } else {
+                this.decoder = newFrameDecoder(inputStream);
+            }
+            this.sampleRate = metadata.getSampleRate();
+            int channels = metadata.getChannels();
+            int bitsPerSample = metadata.getBitsPerSample();
 
             // 根据声道数和位深度确定OpenAL格式
             if (channels == 1) {
@@ -37,7 +65,7 @@ public class FLACStreamDecoder implements AudioDecoder {
                     this.format = AL10.AL_FORMAT_MONO8;
                 } else if (bitsPerSample == 24) {
                     convert24bitsTo16bits = true;
-                    this.format = AL10.AL_FORMAT_STEREO16;
+                    this.format = AL10.AL_FORMAT_MONO16;
                 } else {
                     throw new UnsupportedEncodingException("bits per sample is not 8/16/24");
                 }
@@ -55,62 +83,221 @@ public class FLACStreamDecoder implements AudioDecoder {
             } else {
                 throw new UnsupportedEncodingException("More than 2 channels");
             }
+            this.inputFrameBytes = channels * ((bitsPerSample + 7) / 8);
+            this.outputFrameBytes = convert24bitsTo16bits ? channels * 2 : inputFrameBytes;
         } catch (Exception e) {
             throw new IOException("Failed to initialize FLAC decoder", e);
         }
     }
 
+    /**
+     * 元数据已由 {@link FlacMetadata} 读取，这里给 jflac 拼上只含 STREAMINFO 的头，帧数据直接来自 frames
+     */
+    private FLACDecoder newFrameDecoder(InputStream frames) throws IOException {
+        InputStream headerStream = new ByteArrayInputStream(metadata.toStreamHeader());
+        FLACDecoder flacDecoder = new FLACDecoder(new SequenceInputStream(headerStream, frames));
+        flacDecoder.readStreamInfo();
+        return flacDecoder;
+    }
+
     @Override
-    @SneakyThrows
-    public byte[] readChunk(int maxSize) {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
+    public int readInto(ByteBuffer dst) throws IOException {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        int start = dst.position();
+        try {
+            while (dst.remaining() >= outputFrameBytes) {
+                if (pendingLength == 0 && !decodeNextFrame()) break;
+                drainPending(dst);
+            }
+        } finally {
+            dst.order(order);
+        }
+        int written = dst.position() - start;
+        return written == 0 && endOfStream ? -1 : written;
+    }
 
-        while (output.size() < maxSize) {
+    /**
+     * 解码下一帧（并行解码时为下一批帧）到 pending，并处理定位后需要丢弃的样本
+     */
+    private boolean decodeNextFrame() throws IOException {
+        byte[] data;
+        int length;
+        if (pipeline != null) {
+            data = pipeline.next();
+            length = data == null ? 0 : data.length;
+        } else {
             Frame frame = decoder.readNextFrame();
-            if (frame == null)
-                break;
+            ByteData byteData = frame == null ? null : decoder.decodeFrame(frame, null);
+            data = byteData == null ? null : byteData.getData();
+            length = byteData == null ? 0 : byteData.getLen();
+        }
+        if (data == null) {
+            endOfStream = true;
+            return false;
+        }
+        int skipBytes = 0;
+        if (pendingSkipSamples > 0) {
+            long frameSamples = length / inputFrameBytes;
+            long skipSamples = Math.min(pendingSkipSamples, frameSamples);
+            pendingSkipSamples -= skipSamples;
+            skipBytes = (int) (skipSamples * inputFrameBytes);
+        }
+        pending = data;
+        pendingOffset = skipBytes;
+        pendingLength = length - skipBytes;
+        return true;
+    }
 
-            ByteData byteData = decoder.decodeFrame(frame, null);
-            if (byteData == null)
-                break;
+    private void drainPending(ByteBuffer dst) {
+        int frames = Math.min(pendingLength / inputFrameBytes, dst.remaining() / outputFrameBytes);
+        int inputBytes = frames * inputFrameBytes;
+        if (convert24bitsTo16bits) {
+            // 24位小端样本加抖动量化到16位，直接截断会产生与信号相关的失真
+            for (int i = pendingOffset, end = pendingOffset + inputBytes; i < end; i += 3) {
+                int sample = (pending[i] & 0xFF) | (pending[i + 1] & 0xFF) << 8 | pending[i + 2] << 16;
+                dst.putShort(dither.quantize(sample * (1f / 256)));
+            }
+        } else {
+            dst.put(pending, pendingOffset, inputBytes);
+        }
+        pendingOffset += inputBytes;
+        pendingLength -= inputBytes;
+    }
 
-            byte[] frameData = byteData.getData();
-            output.write(frameData, 0, byteData.getLen());
+    @Override
+    public int readFloats(float[] dst, int offset, int length) throws IOException {
+        int channels = metadata.getChannels();
+        int written = 0;
+        while (length - written >= channels) {
+            if (pendingLength == 0 && !decodeNextFrame()) break;
+            written += drainPendingFloats(dst, offset + written, length - written);
         }
+        return written == 0 && endOfStream ? -1 : written;
+    }
 
-        if (output.size() == 0) return null;
-        byte[] result = output.toByteArray();
-        if (convert24bitsTo16bits) {
-            result = convert24BitTo16Bit(result);
+    private int drainPendingFloats(float[] dst, int offset, int length) {
+        int channels = metadata.getChannels();
+        int frames = Math.min(pendingLength / inputFrameBytes, length / channels);
+        int samples = frames * channels;
+        byte[] data = pending;
+        int i = pendingOffset;
+        switch (inputFrameBytes / channels) {
+            case 3 -> {
+                for (int s = 0; s < samples; s++, i += 3) {
+                    dst[offset + s] = ((data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | data[i + 2] << 16) * (1f / (1 << 23));
+                }
+            }
+            case 2 -> {
+                for (int s = 0; s < samples; s++, i += 2) {
+                    dst[offset + s] = ((data[i] & 0xFF) | data[i + 1] << 8) * (1f / (1 << 15));
+                }
+            }
+            default -> {
+                // jflac 的 8 位输出与 OpenAL 一样是无符号的
+                for (int s = 0; s < samples; s++, i++) {
+                    dst[offset + s] = ((data[i] & 0xFF) - 128) * (1f / (1 << 7));
+                }
+            }
         }
-        return result;
+        pendingOffset += frames * inputFrameBytes;
+        pendingLength -= frames * inputFrameBytes;
+        return samples;
     }
 
-    private byte[] convert24BitTo16Bit(byte[] audioData) {
-        if (audioData == null || audioData.length == 0) return null;
+    @Override
+    public boolean seekToByte(long byteOffset) throws IOException {
+        if (source == null) return false;
+        long offset = Math.max(byteOffset, metadata.getFirstFrameOffset());
+        long contentLength = source.getContentLength();
+        if (contentLength > 0 && offset >= contentLength) return false;
 
-        // 24位音频每样本3字节，转换为16位每样本2字节
-        int sampleCount = audioData.length / 3;
-        short[] samples = new short[sampleCount];
+        // jflac 会在下一个帧同步码处重新同步
+        reopenAt(offset);
+        pendingSkipSamples = 0;
+        return true;
+    }
 
-        for (int i = 0; i < sampleCount; i++) {
-            int offset = i * 3;
-            // 读取24位小端序样本
-            int sample24 = ((audioData[offset + 2] & 0xFF) << 16) |
-                    ((audioData[offset + 1] & 0xFF) << 8) |
-                    (audioData[offset] & 0xFF);
+    @Override
+    public long seekToMillis(long millis) throws IOException {
+        long targetSample = millis * sampleRate / 1000;
+        if (!seekToSample(targetSample)) return -1;
+        return targetSample * 1000 / sampleRate;
+    }
 
-            // 转换为16位（取高16位或进行缩放）
-            samples[i] = (short) (sample24 >> 8);
+    /**
+     * 先用 SEEKTABLE 缩小范围，再对帧头中的样本号做二分查找，最后解码丢弃到目标样本
+     */
+    public boolean seekToSample(long targetSample) throws IOException {
+        long contentLength = source == null ? -1 : source.getContentLength();
+        if (contentLength <= 0 || !source.isRangeSupported()) return false;
+        if (metadata.getTotalSamples() > 0 && targetSample >= metadata.getTotalSamples()) return false;
+
+        long firstFrameOffset = metadata.getFirstFrameOffset();
+        long low = firstFrameOffset;
+        long lowSample = 0;
+        long high = contentLength;
+        long highSample = metadata.getTotalSamples() > 0 ? metadata.getTotalSamples() : Long.MAX_VALUE;
+
+        FlacMetadata.SeekPoint floor = metadata.floorSeekPoint(targetSample);
+        if (floor != null) {
+            low = firstFrameOffset + floor.streamOffset();
+            lowSample = floor.sampleNumber();
+        }
+        FlacMetadata.SeekPoint higher = metadata.higherSeekPoint(targetSample);
+        if (higher != null) {
+            high = firstFrameOffset + higher.streamOffset();
+            highSample = higher.sampleNumber();
         }
 
-        // 转换为字节数组
-        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (short sample : samples) {
-            buffer.putShort(sample);
+        int probeSize = Math.max(PROBE_MIN_SIZE, metadata.getMaxFrameSize() * 2);
+        int probes = 0;
+        while (high - low > probeSize && probes < MAX_PROBES) {
+            probes++;
+            long middle;
+            if (highSample != Long.MAX_VALUE && highSample > lowSample) {
+                // 按样本比例插值，并限制在区间内部避免退化
+                double ratio = (double) (targetSample - lowSample) / (highSample - lowSample);
+                middle = low + (long) ((high - low) * ratio) - probeSize / 2;
+                middle = Math.clamp(middle, low + 1, high - probeSize);
+            } else {
+                middle = low + (high - low) / 2;
+            }
+
+            byte[] probe = source.readRange(middle, probeSize);
+            int frameIndex = FlacFrameHeader.findFrameSync(probe, 0, probe.length, metadata);
+            if (frameIndex < 0) {
+                high = middle;
+                continue;
+            }
+            FlacFrameHeader header = FlacFrameHeader.parse(probe, frameIndex, probe.length - frameIndex, metadata);
+            long frameOffset = middle + frameIndex;
+            if (header == null || frameOffset >= high) {
+                high = middle;
+            } else if (header.sampleNumber() <= targetSample) {
+                low = frameOffset;
+                lowSample = header.sampleNumber();
+            } else {
+                high = frameOffset;
+                highSample = header.sampleNumber();
+            }
         }
-        return buffer.array();
+
+        reopenAt(low);
+        pendingSkipSamples = targetSample - lowSample;
+        return true;
+    }
+
+    private void reopenAt(long offset) throws IOException {
+        BufferedInputStream seekedStream = new BufferedInputStream(source.open(offset), 8192);
+        FLACDecoder seekedDecoder = parallel ? null : newFrameDecoder(seekedStream);
+        FlacFramePipeline seekedPipeline = parallel ? new FlacFramePipeline(seekedStream, metadata) : null;
+        close();
+        this.inputStream = seekedStream;
+        this.decoder = seekedDecoder;
+        this.pipeline = seekedPipeline;
+        this.pendingLength = 0;
+        this.endOfStream = false;
     }
 
     @Override
@@ -123,9 +310,22 @@ public class FLACStreamDecoder implements AudioDecoder {
         return sampleRate;
     }
 
+    @Override
+    public int getChannels() {
+        return metadata.getChannels();
+    }
+
+    @Override
+    public int getBitsPerSample() {
+        return metadata.getBitsPerSample();
+    }
+
     @Override
     public void close() {
         try {
+            if (pipeline != null) {
+                pipeline.close();
+            }
             if (inputStream != null) {
                 inputStream.close();
             }
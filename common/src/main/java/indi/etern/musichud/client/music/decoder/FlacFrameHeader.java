@@ -0,0 +1,117 @@
+package indi.etern.musichud.client.music.decoder;
+
+public record FlacFrameHeader(long sampleNumber, int blockSize, int headerLength) {
+    private static final int[] CRC8_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) : (crc << 1);
+            }
+            CRC8_TABLE[i] = crc & 0xFF;
+        }
+    }
+
+    /**
+     * 解析 offset 处的帧头并校验 CRC-8，不是合法帧头时返回 null
+     */
+    public static FlacFrameHeader parse(byte[] data, int offset, int length, FlacMetadata metadata) {
+        int end = offset + length;
+        if (offset + 6 > end) return null;
+        if ((data[offset] & 0xFF) != 0xFF || (data[offset + 1] & 0xFE) != 0xF8) return null;
+        boolean variableBlockSize = (data[offset + 1] & 0x01) != 0;
+        int blockSizeCode = (data[offset + 2] & 0xF0) >>> 4;
+        int sampleRateCode = data[offset + 2] & 0x0F;
+        int channelAssignment = (data[offset + 3] & 0xF0) >>> 4;
+        int sampleSizeCode = (data[offset + 3] & 0x0E) >>> 1;
+        if (blockSizeCode == 0 || sampleRateCode == 0x0F || channelAssignment > 10
+                || sampleSizeCode == 3 || sampleSizeCode == 7 || (data[offset + 3] & 0x01) != 0) {
+            return null;
+        }
+
+        // UTF-8 风格编码的帧号/样本号
+        int position = offset + 4;
+        int first = data[position++] & 0xFF;
+        int extraBytes;
+        long number;
+        if ((first & 0x80) == 0) {
+            extraBytes = 0;
+            number = first;
+        } else if ((first & 0xE0) == 0xC0) {
+            extraBytes = 1;
+            number = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            extraBytes = 2;
+            number = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            extraBytes = 3;
+            number = first & 0x07;
+        } else if ((first & 0xFC) == 0xF8) {
+            extraBytes = 4;
+            number = first & 0x03;
+        } else if ((first & 0xFE) == 0xFC) {
+            extraBytes = 5;
+            number = first & 0x01;
+        } else if (first == 0xFE) {
+            extraBytes = 6;
+            number = 0;
+        } else {
+            return null;
+        }
+        if (position + extraBytes > end) return null;
+        for (int i = 0; i < extraBytes; i++) {
+            int next = data[position++] & 0xFF;
+            if ((next & 0xC0) != 0x80) return null;
+            number = (number << 6) | (next & 0x3F);
+        }
+
+        int blockSize;
+        if (blockSizeCode == 1) {
+            blockSize = 192;
+        } else if (blockSizeCode <= 5) {
+            blockSize = 576 << (blockSizeCode - 2);
+        } else if (blockSizeCode == 6) {
+            if (position + 1 > end) return null;
+            blockSize = (data[position++] & 0xFF) + 1;
+        } else if (blockSizeCode == 7) {
+            if (position + 2 > end) return null;
+            blockSize = (((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF)) + 1;
+            position += 2;
+        } else {
+            blockSize = 256 << (blockSizeCode - 8);
+        }
+        if (sampleRateCode == 12) {
+            position += 1;
+        } else if (sampleRateCode == 13 || sampleRateCode == 14) {
+            position += 2;
+        }
+        if (position + 1 > end) return null;
+
+        int crc = 0;
+        for (int i = offset; i < position; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        if (crc != (data[position] & 0xFF)) return null;
+
+        if (metadata.getMaxBlockSize() > 0 && blockSize > metadata.getMaxBlockSize()) return null;
+        long sampleNumber = variableBlockSize ? number : number * metadata.getMinBlockSize();
+        if (metadata.getTotalSamples() > 0 && sampleNumber >= metadata.getTotalSamples()) return null;
+        return new FlacFrameHeader(sampleNumber, blockSize, position + 1 - offset);
+    }
+
+    /**
+     * 在 data 中查找第一个合法帧头
+     *
+     * @return 帧头下标，找不到时返回 -1
+     */
+    public static int findFrameSync(byte[] data, int from, int length, FlacMetadata metadata) {
+        for (int i = from; i + 1 < length; i++) {
+            if ((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFE) == 0xF8
+                    && parse(data, i, length - i, metadata) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,233 @@
+package indi.etern.musichud.client.music.decoder;
+
+import org.jflac.FLACDecoder;
+import org.jflac.frame.Frame;
+import org.jflac.util.ByteData;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FLAC 帧找到边界后可以独立解码：调用线程扫描帧头、把连续的帧打包成批次，
+ * 交给一个有上限的 CPU 线程池并行解码，再按顺序取回 PCM。
+ * 帧边界要求下一帧的样本号与上一帧衔接，避免把音频数据中碰巧通过 CRC-8 的同步码当成帧头
+ */
+final class FlacFramePipeline implements Closeable {
+    // 给 Minecraft 主线程和渲染线程留出核心
+    static final int POOL_SIZE = Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4);
+    // 每批至少这么多编码字节，摊薄创建 jflac 解码器的开销
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final int MAX_IN_FLIGHT = POOL_SIZE * 2;
+    private static final int READ_SIZE = 64 * 1024;
+    // 帧头最长 16 字节
+    private static final int MAX_HEADER_LENGTH = 16;
+    // 找不到衔接的帧头时，超过这个距离就接受任意合法帧头重新同步
+    private static final int MAX_FRAME_SEARCH = 1024 * 1024;
+    private static volatile ExecutorService pool;
+
+    private final InputStream input;
+    private final FlacMetadata metadata;
+    private final byte[] streamHeader;
+    private final int inputFrameBytes;
+    private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+    private byte[] window = new byte[READ_SIZE * 2];
+    private int windowStart = 0;
+    private int windowEnd = 0;
+    private boolean inputEnded = false;
+    // 当前帧在 window 中的位置和帧头，尚未同步时为 null
+    private int framePosition = 0;
+    private FlacFrameHeader frameHeader;
+    private boolean scanFinished = false;
+
+    FlacFramePipeline(InputStream input, FlacMetadata metadata) throws IOException {
+        this.input = input;
+        this.metadata = metadata;
+        this.streamHeader = metadata.toStreamHeader();
+        this.inputFrameBytes = metadata.getChannels() * ((metadata.getBitsPerSample() + 7) / 8);
+    }
+
+    private static ExecutorService getPool() {
+        if (pool == null) {
+            synchronized (FlacFramePipeline.class) {
+                if (pool == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    pool = Executors.newFixedThreadPool(POOL_SIZE, runnable -> {
+                        Thread thread = new Thread(runnable, "FLAC Decoder #" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return 按顺序的下一批 PCM（jflac 的输出格式），流结束时返回 null
+     */
+    byte[] next() throws IOException {
+        schedule();
+        Future<byte[]> batch = inFlight.poll();
+        if (batch == null) return null;
+        try {
+            byte[] pcm = batch.get();
+            schedule();
+            return pcm;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for FLAC batch");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        }
+    }
+
+    private void schedule() throws IOException {
+        while (inFlight.size() < MAX_IN_FLIGHT && !scanFinished) {
+            byte[] frames = scanBatch();
+            if (frames == null) break;
+            inFlight.add(getPool().submit(() -> decodeBatch(frames)));
+        }
+    }
+
+    /**
+     * 从当前帧开始收集至少 {@link #BATCH_BYTES} 字节的完整帧
+     *
+     * @return 批次的编码数据，没有更多帧时返回 null
+     */
+    private byte[] scanBatch() throws IOException {
+        compact();
+        if (frameHeader == null && !syncToFrame()) {
+            scanFinished = true;
+            return null;
+        }
+        int batchStart = framePosition;
+        while (framePosition - batchStart < BATCH_BYTES) {
+            int next = findNextFrame();
+            if (next < 0) {
+                // 最后一帧延伸到流结束
+                framePosition = windowEnd;
+                scanFinished = true;
+                break;
+            }
+            framePosition = next;
+            frameHeader = FlacFrameHeader.parse(window, next, windowEnd - next, metadata);
+        }
+        byte[] frames = Arrays.copyOfRange(window, batchStart, framePosition);
+        windowStart = framePosition;
+        return frames.length == 0 ? null : frames;
+    }
+
+    /**
+     * 从 windowStart 开始查找第一个合法帧头，用于起始位置不在帧边界（按字节定位后）的情况
+     */
+    private boolean syncToFrame() throws IOException {
+        int position = windowStart;
+        while (true) {
+            if (!ensureAvailable(position + MAX_HEADER_LENGTH) && position + 2 > windowEnd) return false;
+            int index = FlacFrameHeader.findFrameSync(window, position, windowEnd, metadata);
+            if (index >= 0 && (index + MAX_HEADER_LENGTH <= windowEnd || inputEnded)) {
+                framePosition = index;
+                windowStart = index;
+                frameHeader = FlacFrameHeader.parse(window, index, windowEnd - index, metadata);
+                return true;
+            }
+            if (inputEnded) return false;
+            // 末尾的帧头可能不完整，保留最后几个字节再读，之前的数据不再需要
+            position = index >= 0 ? index : Math.max(position, windowEnd - MAX_HEADER_LENGTH);
+            windowStart = position;
+            position -= compact();
+            if (!ensureAvailable(windowEnd + 1)) return false;
+        }
+    }
+
+    /**
+     * @return 与当前帧衔接的下一帧位置，到达流结束时返回 -1
+     */
+    private int findNextFrame() throws IOException {
+        long expectedSample = frameHeader.sampleNumber() + frameHeader.blockSize();
+        int position = framePosition + frameHeader.headerLength();
+        int fallback = -1;
+        ensureAvailable(position + MAX_HEADER_LENGTH);
+        while (true) {
+            int limit = inputEnded ? windowEnd : windowEnd - MAX_HEADER_LENGTH;
+            for (; position + 1 < limit; position++) {
+                if ((window[position] & 0xFF) != 0xFF || (window[position + 1] & 0xFE) != 0xF8) continue;
+                FlacFrameHeader header = FlacFrameHeader.parse(window, position, windowEnd - position, metadata);
+                if (header == null) continue;
+                if (header.sampleNumber() == expectedSample) return position;
+                if (fallback < 0) fallback = position;
+            }
+            if (inputEnded) return fallback;
+            if (fallback >= 0 && position - framePosition > MAX_FRAME_SEARCH) return fallback;
+            ensureAvailable(windowEnd + 1);
+        }
+    }
+
+    /**
+     * 丢弃 windowStart 之前已打包的数据，只在没有其他位置引用 window 时调用
+     *
+     * @return 数据前移的字节数
+     */
+    private int compact() {
+        int shift = windowStart;
+        if (shift == 0) return 0;
+        System.arraycopy(window, shift, window, 0, windowEnd - shift);
+        windowEnd -= shift;
+        framePosition -= shift;
+        windowStart = 0;
+        return shift;
+    }
+
+    /**
+     * 读取输入直到 window 中至少有 end 字节，空间不足时扩容，已有的位置保持不变
+     *
+     * @return 输入已结束且数据不足时返回 false
+     */
+    private boolean ensureAvailable(int end) throws IOException {
+        while (windowEnd < end && !inputEnded) {
+            if (windowEnd == window.length) {
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+            int read = input.read(window, windowEnd, Math.min(READ_SIZE, window.length - windowEnd));
+            if (read < 0) {
+                inputEnded = true;
+            } else {
+                windowEnd += read;
+            }
+        }
+        return windowEnd >= end;
+    }
+
+    private byte[] decodeBatch(byte[] frames) throws IOException {
+        FLACDecoder decoder = new FLACDecoder(new SequenceInputStream(
+                new ByteArrayInputStream(streamHeader), new ByteArrayInputStream(frames)));
+        decoder.readStreamInfo();
+        int blockBytes = Math.max(metadata.getMaxBlockSize(), 4096) * inputFrameBytes;
+        byte[] pcm = new byte[Math.max(blockBytes, frames.length * 2)];
+        int length = 0;
+        ByteData byteData = null;
+        Frame frame;
+        while ((frame = decoder.readNextFrame()) != null) {
+            byteData = decoder.decodeFrame(frame, byteData);
+            if (length + byteData.getLen() > pcm.length) {
+                pcm = Arrays.copyOf(pcm, Math.max(pcm.length * 2, length + byteData.getLen()));
+            }
+            System.arraycopy(byteData.getData(), 0, pcm, length, byteData.getLen());
+            length += byteData.getLen();
+        }
+        return length == pcm.length ? pcm : Arrays.copyOf(pcm, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> batch : inFlight) {
+            batch.cancel(false);
+        }
+        inFlight.clear();
+        input.close();
+    }
+}
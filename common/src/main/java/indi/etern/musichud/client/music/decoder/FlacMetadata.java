@@ -0,0 +1,159 @@
+package indi.etern.musichud.client.music.decoder;
+
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+public class FlacMetadata {
+    private static final int STREAM_INFO = 0;
+    private static final int STREAM_INFO_LENGTH = 34;
+    private static final int SEEK_TABLE = 3;
+    private static final int SEEK_POINT_LENGTH = 18;
+    private static final long PLACEHOLDER_SAMPLE = 0xFFFFFFFFFFFFFFFFL;
+
+    private byte[] streamInfo;
+    private int minBlockSize;
+    private int maxBlockSize;
+    private int minFrameSize;
+    private int maxFrameSize;
+    private int sampleRate;
+    private int channels;
+    private int bitsPerSample;
+    private long totalSamples;
+    /**
+     * 第一个音频帧在整个资源中的字节偏移
+     */
+    private long firstFrameOffset;
+    /**
+     * SEEKTABLE 中的有效定位点（已去除占位点），按样本号升序
+     */
+    private final List<SeekPoint> seekPoints = new ArrayList<>();
+
+    /**
+     * 读取 "fLaC" 标记与全部元数据块，读取完成后输入流恰好位于第一个音频帧
+     */
+    public static FlacMetadata read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        FlacMetadata metadata = new FlacMetadata();
+        long offset = 0;
+
+        byte[] marker = new byte[4];
+        input.readFully(marker);
+        offset += 4;
+        if (marker[0] == 'I' && marker[1] == 'D' && marker[2] == '3') {
+            // 跳过 ID3v2 标签
+            byte[] id3Header = new byte[6];
+            input.readFully(id3Header);
+            boolean hasFooter = (id3Header[1] & 0x10) != 0;
+            int tagSize = ((id3Header[2] & 0x7F) << 21) | ((id3Header[3] & 0x7F) << 14)
+                    | ((id3Header[4] & 0x7F) << 7) | (id3Header[5] & 0x7F);
+            int remaining = tagSize + (hasFooter ? 10 : 0);
+            input.skipNBytes(remaining);
+            offset += 6 + remaining;
+            input.readFully(marker);
+            offset += 4;
+        }
+        if (marker[0] != 'f' || marker[1] != 'L' || marker[2] != 'a' || marker[3] != 'C') {
+            throw new IOException("Not a FLAC stream");
+        }
+
+        boolean last = false;
+        while (!last) {
+            int blockHeader = input.readInt();
+            offset += 4;
+            last = (blockHeader & 0x80000000) != 0;
+            int type = (blockHeader >>> 24) & 0x7F;
+            int length = blockHeader & 0xFFFFFF;
+            if (type == STREAM_INFO) {
+                if (length != STREAM_INFO_LENGTH) {
+                    throw new IOException("Invalid STREAMINFO block length: " + length);
+                }
+                byte[] streamInfo = new byte[STREAM_INFO_LENGTH];
+                input.readFully(streamInfo);
+                metadata.parseStreamInfo(streamInfo);
+            } else if (type == SEEK_TABLE) {
+                int pointCount = length / SEEK_POINT_LENGTH;
+                for (int i = 0; i < pointCount; i++) {
+                    long sampleNumber = input.readLong();
+                    long streamOffset = input.readLong();
+                    int frameSamples = input.readUnsignedShort();
+                    if (sampleNumber != PLACEHOLDER_SAMPLE) {
+                        metadata.seekPoints.add(new SeekPoint(sampleNumber, streamOffset, frameSamples));
+                    }
+                }
+                input.skipNBytes(length - pointCount * SEEK_POINT_LENGTH);
+            } else {
+                input.skipNBytes(length);
+            }
+            offset += length;
+        }
+        if (metadata.streamInfo == null) {
+            throw new IOException("STREAMINFO metadata block missing");
+        }
+        metadata.firstFrameOffset = offset;
+        return metadata;
+    }
+
+    private void parseStreamInfo(byte[] data) {
+        this.streamInfo = data;
+        minBlockSize = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+        maxBlockSize = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+        minFrameSize = ((data[4] & 0xFF) << 16) | ((data[5] & 0xFF) << 8) | (data[6] & 0xFF);
+        maxFrameSize = ((data[7] & 0xFF) << 16) | ((data[8] & 0xFF) << 8) | (data[9] & 0xFF);
+        sampleRate = ((data[10] & 0xFF) << 12) | ((data[11] & 0xFF) << 4) | ((data[12] & 0xF0) >>> 4);
+        channels = ((data[12] & 0x0E) >>> 1) + 1;
+        bitsPerSample = (((data[12] & 0x01) << 4) | ((data[13] & 0xF0) >>> 4)) + 1;
+        totalSamples = ((long) (data[13] & 0x0F) << 32) | ((long) (data[14] & 0xFF) << 24)
+                | ((data[15] & 0xFF) << 16) | ((data[16] & 0xFF) << 8) | (data[17] & 0xFF);
+    }
+
+    /**
+     * @return 样本号不大于 sampleNumber 的最后一个定位点，没有时返回 null
+     */
+    public SeekPoint floorSeekPoint(long sampleNumber) {
+        SeekPoint result = null;
+        for (SeekPoint seekPoint : seekPoints) {
+            if (seekPoint.sampleNumber() > sampleNumber) break;
+            result = seekPoint;
+        }
+        return result;
+    }
+
+    /**
+     * @return 样本号大于 sampleNumber 的第一个定位点，没有时返回 null
+     */
+    public SeekPoint higherSeekPoint(long sampleNumber) {
+        for (SeekPoint seekPoint : seekPoints) {
+            if (seekPoint.sampleNumber() > sampleNumber) return seekPoint;
+        }
+        return null;
+    }
+
+    /**
+     * @param streamOffset 相对第一个音频帧的字节偏移
+     */
+    public record SeekPoint(long sampleNumber, long streamOffset, int frameSamples) {
+    }
+
+    /**
+     * 生成仅包含 STREAMINFO 的最小 FLAC 头，用于在流中间重新创建帧解码器
+     */
+    public byte[] toStreamHeader() {
+        byte[] header = new byte[8 + STREAM_INFO_LENGTH];
+        header[0] = 'f';
+        header[1] = 'L';
+        header[2] = 'a';
+        header[3] = 'C';
+        header[4] = (byte) (0x80 | STREAM_INFO);
+        header[5] = 0;
+        header[6] = 0;
+        header[7] = STREAM_INFO_LENGTH;
+        System.arraycopy(streamInfo, 0, header, 8, STREAM_INFO_LENGTH);
+        return header;
+    }
+}
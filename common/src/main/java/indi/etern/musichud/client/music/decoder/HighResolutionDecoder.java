@@ -0,0 +1,19 @@
+package indi.etern.musichud.client.music.decoder;
+
+import java.io.IOException;
+
+/**
+ * 能以原始精度输出样本的解码器，位深转换交给 {@link PcmStage}，避免先截断到 16 位再处理
+ */
+public interface HighResolutionDecoder extends AudioDecoder {
+    int getChannels();
+
+    int getBitsPerSample();
+
+    /**
+     * 解码为交错的 float 样本，范围 [-1, 1)，只写入完整的采样帧，与 {@link #readInto} 共用解码进度
+     *
+     * @return 写入的样本数，流结束时返回 -1
+     */
+    int readFloats(float[] dst, int offset, int length) throws IOException;
+}
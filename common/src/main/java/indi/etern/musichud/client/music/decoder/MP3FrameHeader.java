@@ -0,0 +1,97 @@
+package indi.etern.musichud.client.music.decoder;
+
+public record MP3FrameHeader(int version, int layer, int bitrate, int sampleRate, boolean padding, int channelMode,
+                             int frameLength) {
+    public static final int MPEG1 = 3;
+    public static final int MPEG2 = 2;
+    public static final int MPEG2_5 = 0;
+    public static final int CHANNEL_MODE_MONO = 3;
+
+    // [MPEG1 / MPEG2(.5)][layer 1-3][index]，单位 kbps
+    private static final int[][][] BITRATES = {
+            {
+                    {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+                    {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+            },
+            {
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+            }
+    };
+    private static final int[] SAMPLE_RATES_MPEG1 = {44100, 48000, 32000};
+
+    /**
+     * 解析 4 字节帧头，非法或不支持（free format）时返回 null
+     */
+    public static MP3FrameHeader parse(int word) {
+        if ((word & 0xFFE00000) != 0xFFE00000) return null;
+        int version = (word >>> 19) & 0x3;
+        int layerBits = (word >>> 17) & 0x3;
+        int bitrateIndex = (word >>> 12) & 0xF;
+        int sampleRateIndex = (word >>> 10) & 0x3;
+        if (version == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 0xF || sampleRateIndex == 3) {
+            return null;
+        }
+        int layer = 4 - layerBits;
+        int bitrate = BITRATES[version == MPEG1 ? 0 : 1][layer - 1][bitrateIndex] * 1000;
+        int sampleRate = SAMPLE_RATES_MPEG1[sampleRateIndex];
+        if (version == MPEG2) {
+            sampleRate /= 2;
+        } else if (version == MPEG2_5) {
+            sampleRate /= 4;
+        }
+        boolean padding = ((word >>> 9) & 0x1) != 0;
+        int channelMode = (word >>> 6) & 0x3;
+
+        int frameLength;
+        if (layer == 1) {
+            frameLength = (12 * bitrate / sampleRate + (padding ? 1 : 0)) * 4;
+        } else if (layer == 3 && version != MPEG1) {
+            frameLength = 72 * bitrate / sampleRate + (padding ? 1 : 0);
+        } else {
+            frameLength = 144 * bitrate / sampleRate + (padding ? 1 : 0);
+        }
+        return new MP3FrameHeader(version, layer, bitrate, sampleRate, padding, channelMode, frameLength);
+    }
+
+    public static int readWord(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * 在 data 中查找下一个可信的帧起点：当前帧头合法，且其后紧跟的帧头也与之一致
+     *
+     * @return 帧起点下标，找不到时返回 -1
+     */
+    public static int findFrameSync(byte[] data, int from, int length) {
+        for (int i = from; i + 4 <= length; i++) {
+            if ((data[i] & 0xFF) != 0xFF) continue;
+            MP3FrameHeader header = parse(readWord(data, i));
+            if (header == null) continue;
+            int next = i + header.frameLength;
+            if (next + 4 > length) {
+                // 缓冲区末尾无法验证下一帧时接受当前候选
+                return i;
+            }
+            MP3FrameHeader nextHeader = parse(readWord(data, next));
+            if (nextHeader != null && nextHeader.version == header.version
+                    && nextHeader.layer == header.layer && nextHeader.sampleRate == header.sampleRate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int samplesPerFrame() {
+        if (layer == 1) return 384;
+        if (layer == 3 && version != MPEG1) return 576;
+        return 1152;
+    }
+
+    public int channels() {
+        return channelMode == CHANNEL_MODE_MONO ? 1 : 2;
+    }
+}
@@ -0,0 +1,154 @@
+package indi.etern.musichud.client.music.decoder;
+
+import lombok.Getter;
+
+/**
+ * 第一帧中的 Xing/Info 或 VBRI 头，用于把时间换算为字节偏移
+ */
+public class MP3SeekTable {
+    private static final int XING_FRAMES_FLAG = 0x1;
+    private static final int XING_BYTES_FLAG = 0x2;
+    private static final int XING_TOC_FLAG = 0x4;
+    private static final int VBRI_OFFSET = 36;
+
+    private final int sampleRate;
+    private final int samplesPerFrame;
+    @Getter
+    private long frameCount;
+    // 音频数据字节数（从第一帧起），未知时为 -1
+    @Getter
+    private long byteCount = -1;
+    // Xing：100 项，每项为 0~255 的相对位置
+    private int[] xingToc;
+    // VBRI：每项为该段的字节数
+    private long[] vbriToc;
+    private int vbriFramesPerEntry;
+
+    private MP3SeekTable(MP3FrameHeader header) {
+        this.sampleRate = header.sampleRate();
+        this.samplesPerFrame = header.samplesPerFrame();
+    }
+
+    /**
+     * 从 frameStart 处的第一帧中解析 Xing/Info 或 VBRI 头，都不存在时返回 null
+     */
+    public static MP3SeekTable parse(byte[] data, int frameStart, int length, MP3FrameHeader header) {
+        int sideInfoLength;
+        if (header.version() == MP3FrameHeader.MPEG1) {
+            sideInfoLength = header.channels() == 1 ? 17 : 32;
+        } else {
+            sideInfoLength = header.channels() == 1 ? 9 : 17;
+        }
+        int xingOffset = frameStart + 4 + sideInfoLength;
+        if (matches(data, xingOffset, length, "Xing") || matches(data, xingOffset, length, "Info")) {
+            return parseXing(data, xingOffset + 4, length, header);
+        }
+        int vbriOffset = frameStart + VBRI_OFFSET;
+        if (matches(data, vbriOffset, length, "VBRI")) {
+            return parseVbri(data, vbriOffset + 4, length, header);
+        }
+        return null;
+    }
+
+    private static MP3SeekTable parseXing(byte[] data, int position, int length, MP3FrameHeader header) {
+        if (position + 4 > length) return null;
+        MP3SeekTable table = new MP3SeekTable(header);
+        int flags = MP3FrameHeader.readWord(data, position);
+        position += 4;
+        if ((flags & XING_FRAMES_FLAG) != 0) {
+            if (position + 4 > length) return null;
+            table.frameCount = MP3FrameHeader.readWord(data, position) & 0xFFFFFFFFL;
+            position += 4;
+        }
+        if ((flags & XING_BYTES_FLAG) != 0) {
+            if (position + 4 > length) return null;
+            table.byteCount = MP3FrameHeader.readWord(data, position) & 0xFFFFFFFFL;
+            position += 4;
+        }
+        if ((flags & XING_TOC_FLAG) != 0 && position + 100 <= length) {
+            table.xingToc = new int[100];
+            for (int i = 0; i < 100; i++) {
+                table.xingToc[i] = data[position + i] & 0xFF;
+            }
+        }
+        return table;
+    }
+
+    private static MP3SeekTable parseVbri(byte[] data, int position, int length, MP3FrameHeader header) {
+        // version(2) delay(2) quality(2) bytes(4) frames(4) entries(2) scale(2) entrySize(2) framesPerEntry(2)
+        if (position + 22 > length) return null;
+        MP3SeekTable table = new MP3SeekTable(header);
+        table.byteCount = MP3FrameHeader.readWord(data, position + 6) & 0xFFFFFFFFL;
+        table.frameCount = MP3FrameHeader.readWord(data, position + 10) & 0xFFFFFFFFL;
+        int entryCount = readShort(data, position + 14);
+        int scale = readShort(data, position + 16);
+        int entrySize = readShort(data, position + 18);
+        table.vbriFramesPerEntry = readShort(data, position + 20);
+        position += 22;
+        if (entrySize < 1 || entrySize > 4 || table.vbriFramesPerEntry == 0
+                || position + entryCount * entrySize > length) {
+            return table;
+        }
+        table.vbriToc = new long[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            long value = 0;
+            for (int j = 0; j < entrySize; j++) {
+                value = (value << 8) | (data[position++] & 0xFF);
+            }
+            table.vbriToc[i] = value * scale;
+        }
+        return table;
+    }
+
+    public long getDurationMillis() {
+        if (frameCount <= 0) return -1;
+        return frameCount * samplesPerFrame * 1000 / sampleRate;
+    }
+
+    /**
+     * @param audioBytes 音频数据总字节数，头中没有时由调用方根据资源大小提供
+     * @return 相对第一帧的字节偏移，无法换算时返回 -1
+     */
+    public long byteOffsetOf(long millis, long audioBytes) {
+        long durationMillis = getDurationMillis();
+        long totalBytes = byteCount > 0 ? byteCount : audioBytes;
+        if (durationMillis <= 0 || totalBytes <= 0) return -1;
+        if (millis >= durationMillis) return -1;
+
+        if (xingToc != null) {
+            double percent = millis * 100.0 / durationMillis;
+            int index = Math.min((int) percent, 99);
+            double lower = xingToc[index];
+            double upper = index < 99 ? xingToc[index + 1] : 256;
+            double position = lower + (upper - lower) * (percent - index);
+            return (long) (position / 256.0 * totalBytes);
+        } else if (vbriToc != null) {
+            double entryMillis = (double) vbriFramesPerEntry * samplesPerFrame * 1000 / sampleRate;
+            long offset = 0;
+            double entryStart = 0;
+            for (long entryBytes : vbriToc) {
+                if (millis < entryStart + entryMillis) {
+                    return offset + (long) (entryBytes * (millis - entryStart) / entryMillis);
+                }
+                offset += entryBytes;
+                entryStart += entryMillis;
+            }
+            return Math.min(offset, totalBytes);
+        } else {
+            // 没有目录时按平均码率线性换算
+            return totalBytes * millis / durationMillis;
+        }
+    }
+
+    private static boolean matches(byte[] data, int offset, int length, String tag) {
+        if (offset + 4 > length) return false;
+        for (int i = 0; i < 4; i++) {
+            if (data[offset + i] != tag.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+}
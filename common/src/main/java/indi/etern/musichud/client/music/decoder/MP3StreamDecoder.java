@@ -1,64 +1,185 @@
 package indi.etern.musichud.client.music.decoder;
 
+import indi.etern.musichud.client.music.stream.AudioSource;
 import javazoom.jl.decoder.*;
-import lombok.SneakyThrows;
 import org.lwjgl.openal.AL10;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class MP3StreamDecoder implements AudioDecoder {
+    private static final int RESYNC_WINDOW = 16384;
+    private static final int FIRST_FRAME_WINDOW = 8192;
+    private final AudioSource source;
+    // 第一帧在整个资源中的字节偏移（跳过 ID3v2 标签后）
+    private long firstFrameOffset;
+    private MP3FrameHeader firstFrameHeader;
+    private MP3SeekTable seekTable;
     private Bitstream bitstream;
     private Decoder decoder;
     private int format;
     private int sampleRate;
+    private int channels = 2;
     private boolean initialized = false;
+    // 已解码但尚未写出的样本
+    private short[] pending = new short[Obuffer.OBUFFERSIZE];
+    private int pendingOffset;
+    private int pendingLength = 0;
+    private boolean endOfStream = false;
 
-    public MP3StreamDecoder(BufferedInputStream inputStream) {
+    public MP3StreamDecoder(BufferedInputStream inputStream, AudioSource source) throws IOException {
+        this.source = source;
+        this.firstFrameOffset = skipId3v2(inputStream);
+        inspectFirstFrame(inputStream);
         this.bitstream = new Bitstream(inputStream);
         this.decoder = new Decoder();
     }
 
+    private static long skipId3v2(BufferedInputStream inputStream) throws IOException {
+        inputStream.mark(10);
+        byte[] header = inputStream.readNBytes(10);
+        if (header.length < 10 || header[0] != 'I' || header[1] != 'D' || header[2] != '3') {
+            inputStream.reset();
+            return 0;
+        }
+        boolean hasFooter = (header[5] & 0x10) != 0;
+        int tagSize = ((header[6] & 0x7F) << 21) | ((header[7] & 0x7F) << 14)
+                | ((header[8] & 0x7F) << 7) | (header[9] & 0x7F);
+        int remaining = tagSize + (hasFooter ? 10 : 0);
+        inputStream.skipNBytes(remaining);
+        return 10L + remaining;
+    }
+
+    /**
+     * 预读第一帧，解析其中的 Xing/Info 或 VBRI 头
+     */
+    private void inspectFirstFrame(BufferedInputStream inputStream) throws IOException {
+        inputStream.mark(FIRST_FRAME_WINDOW);
+        byte[] window = new byte[FIRST_FRAME_WINDOW];
+        int length = inputStream.readNBytes(window, 0, FIRST_FRAME_WINDOW);
+        inputStream.reset();
+        int frameStart = MP3FrameHeader.findFrameSync(window, 0, length);
+        if (frameStart < 0) return;
+        firstFrameOffset += frameStart;
+        firstFrameHeader = MP3FrameHeader.parse(MP3FrameHeader.readWord(window, frameStart));
+        seekTable = MP3SeekTable.parse(window, frameStart, length, firstFrameHeader);
+    }
+
     @Override
-    @SneakyThrows
-    public byte[] readChunk(int maxSize) {
+    public int readInto(ByteBuffer dst) throws IOException {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        int start = dst.position();
         try {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            while (output.size() < maxSize) {
-                Header header = bitstream.readFrame();
-                if (header == null) {
-                    break;
-                }
-                if (!initialized) {
-                    this.sampleRate = header.frequency();
-                    int channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
-                    this.format = channels == 1 ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
-                    initialized = true;
-                }
+            while (dst.remaining() >= Short.BYTES * channels) {
+                if (pendingLength == 0 && !decodeNextFrame()) break;
+                drainPending(dst);
+            }
+        } finally {
+            dst.order(order);
+        }
+        int written = dst.position() - start;
+        return written == 0 && endOfStream ? -1 : written;
+    }
 
-                Obuffer obuffer = decoder.decodeFrame(header, bitstream);
-                if (obuffer instanceof SampleBuffer) {
-                    SampleBuffer buffer = (SampleBuffer) obuffer;
-                    short[] shortData = buffer.getBuffer();
+    /**
+     * 解码下一帧；jlayer 复用同一个 SampleBuffer，放不下的部分需要复制出来
+     */
+    private boolean decodeNextFrame() throws IOException {
+        try {
+            Header header = bitstream.readFrame();
+            if (header == null) {
+                endOfStream = true;
+                return false;
+            }
+            if (!initialized) {
+                this.sampleRate = header.frequency();
+                this.channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+                this.format = channels == 1 ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+                initialized = true;
+            }
 
-                    // 将short[]转换为byte[] (16位PCM, 小端序)
-                    for (short sample : shortData) {
-                        output.write(sample & 0xFF);        // 低字节
-                        output.write((sample >> 8) & 0xFF); // 高字节
-                    }
+            Obuffer obuffer = decoder.decodeFrame(header, bitstream);
+            if (obuffer instanceof SampleBuffer buffer) {
+                int length = buffer.getBufferLength();
+                if (pending.length < length) {
+                    pending = new short[length];
                 }
-                bitstream.closeFrame();
+                System.arraycopy(buffer.getBuffer(), 0, pending, 0, length);
+                pendingOffset = 0;
+                pendingLength = length;
             }
-
-            if (output.size() == 0) return null;
-            return output.toByteArray();
+            bitstream.closeFrame();
+            return true;
         } catch (BitstreamException e) {
             if (e.getErrorCode() == BitstreamErrors.STREAM_ERROR) {
-                return null;
-            } else {
-                throw e;
+                endOfStream = true;
+                return false;
             }
+            throw new IOException(e);
+        } catch (DecoderException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void drainPending(ByteBuffer dst) {
+        int samples = Math.min(pendingLength, dst.remaining() / Short.BYTES);
+        samples -= samples % channels;
+        // 16位PCM, 小端序
+        dst.asShortBuffer().put(pending, pendingOffset, samples);
+        dst.position(dst.position() + samples * Short.BYTES);
+        pendingOffset += samples;
+        pendingLength -= samples;
+    }
+
+    @Override
+    public boolean seekToByte(long byteOffset) throws IOException {
+        if (source == null) return false;
+        long contentLength = source.getContentLength();
+        if (contentLength > 0 && byteOffset >= contentLength) return false;
+
+        BufferedInputStream seekedStream = new BufferedInputStream(source.open(Math.max(byteOffset, 0)), RESYNC_WINDOW * 2);
+        resyncToFrame(seekedStream);
+        close();
+        this.bitstream = new Bitstream(seekedStream);
+        this.decoder = new Decoder();
+        this.pendingLength = 0;
+        this.endOfStream = false;
+        return true;
+    }
+
+    @Override
+    public long seekToMillis(long millis) throws IOException {
+        if (source == null || firstFrameHeader == null) return -1;
+        long contentLength = source.getContentLength();
+        long audioBytes = contentLength > 0 ? contentLength - firstFrameOffset : -1;
+        long offset;
+        if (seekTable != null) {
+            offset = seekTable.byteOffsetOf(millis, audioBytes);
+        } else {
+            // 没有 VBR 头时视为 CBR
+            offset = (long) firstFrameHeader.bitrate() / 8 * millis / 1000;
+            if (audioBytes > 0 && offset >= audioBytes) offset = -1;
+        }
+        if (offset < 0 || !seekToByte(firstFrameOffset + offset)) return -1;
+        return millis;
+    }
+
+    /**
+     * 丢弃直到下一个可信帧头之前的字节，避免 jlayer 在帧中间误同步
+     */
+    private static void resyncToFrame(BufferedInputStream inputStream) throws IOException {
+        inputStream.mark(RESYNC_WINDOW);
+        byte[] window = new byte[RESYNC_WINDOW];
+        int length = inputStream.readNBytes(window, 0, RESYNC_WINDOW);
+        inputStream.reset();
+        int frameStart = MP3FrameHeader.findFrameSync(window, 0, length);
+        if (frameStart < 0) {
+            throw new IOException("No MP3 frame found after seek");
         }
+        inputStream.skipNBytes(frameStart);
     }
 
     @Override
@@ -0,0 +1,217 @@
+package indi.etern.musichud.client.music.decoder;
+
+import org.lwjgl.openal.AL10;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 解码器和 OpenAL 之间的 PCM 处理：高位深用 TPDF 抖动降到 16 位，按需混成单声道，
+ * 高于 48kHz 的流重采样到设备采样率。不需要处理时直接透传解码器的输出
+ */
+public class PcmStage implements AudioDecoder {
+    // 不高于这个采样率的流交给 OpenAL 自己转换
+    static final int HI_RES_SAMPLE_RATE = 48000;
+    // 每次从解码器读取的采样帧数
+    private static final int CHUNK_FRAMES = 4096;
+
+    private final AudioDecoder inner;
+    private final boolean downmix;
+    private final int deviceSampleRate;
+    private final boolean passthrough;
+    private final TpdfDither dither = new TpdfDither();
+    // 非高精度解码器的 16/8 位输出
+    private ByteBuffer scratch;
+    private float[] input = new float[CHUNK_FRAMES * 2];
+    private float[] resampled = new float[0];
+    private PolyphaseResampler resampler;
+    // 已处理但尚未写出的样本
+    private short[] pcm = new short[CHUNK_FRAMES * 2];
+    private int pcmOffset;
+    private int pcmLength = 0;
+    private boolean endOfStream = false;
+
+    /**
+     * @param deviceSampleRate 输出设备的采样率，0 表示不重采样
+     */
+    public PcmStage(AudioDecoder inner, boolean downmix, int deviceSampleRate) {
+        this.inner = inner;
+        this.downmix = downmix;
+        this.deviceSampleRate = deviceSampleRate;
+        // MP3 的声道数要解码第一帧后才知道，但位深固定为 16 位、采样率不超过 48kHz，只有混音需要处理
+        this.passthrough = !downmix && inputBits() == 16 && !needsResample(inner.getSampleRate());
+    }
+
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+
+    @Override
+    public int readInto(ByteBuffer dst) throws IOException {
+        if (passthrough) return inner.readInto(dst);
+        int frameBytes = outputChannels() * 2;
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        int start = dst.position();
+        try {
+            while (dst.remaining() >= frameBytes) {
+                if (pcmLength == 0 && !process()) break;
+                int samples = Math.min(pcmLength, dst.remaining() / frameBytes * (frameBytes / 2));
+                dst.asShortBuffer().put(pcm, pcmOffset, samples);
+                dst.position(dst.position() + samples * 2);
+                pcmOffset += samples;
+                pcmLength -= samples;
+            }
+        } finally {
+            dst.order(order);
+        }
+        int written = dst.position() - start;
+        return written == 0 && endOfStream ? -1 : written;
+    }
+
+    /**
+     * 从解码器读取一段样本，处理后放入 pcm
+     *
+     * @return 流已结束时返回 false
+     */
+    private boolean process() throws IOException {
+        int samples = readInput();
+        if (samples < 0) {
+            endOfStream = true;
+            return false;
+        }
+        int channels = inputChannels();
+        int frames = samples / channels;
+        // 原本就是 16 位精度且没有经过运算的样本不需要抖动
+        boolean reduced = inputBits() > 16;
+        if (downmix && channels == 2) {
+            for (int i = 0; i < frames; i++) {
+                input[i] = (input[i * 2] + input[i * 2 + 1]) * 0.5f;
+            }
+            channels = 1;
+            reduced = true;
+        }
+        float[] output = input;
+        int rate = inner.getSampleRate();
+        if (needsResample(rate)) {
+            if (resampler == null || resampler.inputRate != rate || resampler.channels != channels) {
+                resampler = new PolyphaseResampler(rate, deviceSampleRate, channels);
+            }
+            int capacity = resampler.maxOutputFrames(frames) * channels;
+            if (resampled.length < capacity) {
+                resampled = new float[capacity];
+            }
+            frames = resampler.process(input, frames, resampled);
+            output = resampled;
+            reduced = true;
+        }
+        int length = frames * channels;
+        if (pcm.length < length) {
+            pcm = new short[length];
+        }
+        if (reduced) {
+            dither.quantize(output, length, pcm);
+        } else {
+            TpdfDither.round(output, length, pcm);
+        }
+        pcmOffset = 0;
+        pcmLength = length;
+        return true;
+    }
+
+    /**
+     * @return 读入 input 的样本数，流结束时返回 -1
+     */
+    private int readInput() throws IOException {
+        if (inner instanceof HighResolutionDecoder highResolution) {
+            return highResolution.readFloats(input, 0, CHUNK_FRAMES * highResolution.getChannels());
+        }
+        if (scratch == null) {
+            scratch = ByteBuffer.allocate(CHUNK_FRAMES * 2 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        // 8 位样本每字节一个，读取量不能超过 input 的容量
+        int read = inner.readInto(scratch.clear().limit(input.length * inputBits() / 8));
+        if (read < 0) return -1;
+        byte[] data = scratch.array();
+        if (inputBits() == 8) {
+            // OpenAL 的 8 位样本是无符号的
+            for (int i = 0; i < read; i++) {
+                input[i] = ((data[i] & 0xFF) - 128) * (1f / 128);
+            }
+            return read;
+        }
+        int samples = read / 2;
+        for (int i = 0; i < samples; i++) {
+            input[i] = (short) ((data[i * 2] & 0xFF) | data[i * 2 + 1] << 8) * (1f / 32768);
+        }
+        return samples;
+    }
+
+    private boolean needsResample(int rate) {
+        return deviceSampleRate > 0 && rate > HI_RES_SAMPLE_RATE && rate > deviceSampleRate
+                && rate / gcd(rate, deviceSampleRate) <= PolyphaseResampler.MAX_PHASES
+                && deviceSampleRate / gcd(rate, deviceSampleRate) <= PolyphaseResampler.MAX_PHASES;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private int inputChannels() {
+        if (inner instanceof HighResolutionDecoder highResolution) return highResolution.getChannels();
+        int format = inner.getFormat();
+        return format == AL10.AL_FORMAT_MONO8 || format == AL10.AL_FORMAT_MONO16 ? 1 : 2;
+    }
+
+    private int inputBits() {
+        if (inner instanceof HighResolutionDecoder highResolution) return highResolution.getBitsPerSample();
+        int format = inner.getFormat();
+        return format == AL10.AL_FORMAT_MONO8 || format == AL10.AL_FORMAT_STEREO8 ? 8 : 16;
+    }
+
+    private int outputChannels() {
+        return downmix ? 1 : inputChannels();
+    }
+
+    @Override
+    public int getFormat() {
+        if (passthrough) return inner.getFormat();
+        return outputChannels() == 1 ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+    }
+
+    @Override
+    public int getSampleRate() {
+        int rate = inner.getSampleRate();
+        return needsResample(rate) ? deviceSampleRate : rate;
+    }
+
+    @Override
+    public boolean seekToByte(long byteOffset) throws IOException {
+        if (!inner.seekToByte(byteOffset)) return false;
+        resetProcessing();
+        return true;
+    }
+
+    @Override
+    public long seekToMillis(long millis) throws IOException {
+        long result = inner.seekToMillis(millis);
+        if (result >= 0) {
+            resetProcessing();
+        }
+        return result;
+    }
+
+    private void resetProcessing() {
+        pcmLength = 0;
+        endOfStream = false;
+        if (resampler != null) {
+            resampler.reset();
+        }
+    }
+
+    @Override
+    public void close() {
+        inner.close();
+    }
+}
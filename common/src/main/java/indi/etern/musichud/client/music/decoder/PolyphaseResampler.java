@@ -0,0 +1,169 @@
+package indi.etern.musichud.client.music.decoder;
+
+import java.util.Arrays;
+
+/**
+ * 有理数比例 L/M 的多相 FIR 重采样，Kaiser 窗 sinc 低通。每个输出样本只计算它所在的一相，
+ * 各声道分开存放，内层循环是连续数组上的乘加，便于 JIT 自动向量化。
+ * 开头补零抵消了滤波器延迟，输出与输入在时间上对齐；流末尾最后半个窗口的样本不会输出
+ */
+final class PolyphaseResampler {
+    // 每侧的过零点数，决定过渡带宽度和阻带衰减
+    private static final int ZERO_CROSSINGS = 16;
+    private static final double KAISER_BETA = 8.0;
+    // 截止频率占较低一侧奈奎斯特频率的比例，剩下的作为过渡带
+    private static final double CUTOFF = 0.95;
+    // 约简后的相数上限，非常规的采样率组合会产生过大的系数表
+    static final int MAX_PHASES = 4096;
+
+    final int inputRate;
+    final int outputRate;
+    final int channels;
+    private final int phases;
+    private final int step;
+    private final int halfTaps;
+    private final int taps;
+    // phases 组系数，每组 taps 个
+    private final float[] coefficients;
+    private float[][] history;
+    // 每个声道 history 中的有效样本数
+    private int filled;
+    // 当前输出窗口的起点和相位
+    private int position;
+    private int phase;
+
+    PolyphaseResampler(int inputRate, int outputRate, int channels) {
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.channels = channels;
+        int gcd = gcd(inputRate, outputRate);
+        this.phases = outputRate / gcd;
+        this.step = inputRate / gcd;
+        if (phases > MAX_PHASES) {
+            throw new IllegalArgumentException("Unsupported sample rate ratio " + inputRate + " -> " + outputRate);
+        }
+        double cutoff = CUTOFF * Math.min(1.0, (double) outputRate / inputRate);
+        this.halfTaps = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        this.taps = halfTaps * 2;
+        this.coefficients = new float[phases * taps];
+        double kaiserNorm = besselI0(KAISER_BETA);
+        double[] values = new double[taps];
+        for (int p = 0; p < phases; p++) {
+            // 第 k 个系数作用于窗口内第 k 个输入样本，输出时刻位于窗口第 halfTaps - 1 个样本之后 p / phases 处
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                double distance = k - (halfTaps - 1) - (double) p / phases;
+                double x = distance / halfTaps;
+                double window = Math.abs(x) >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - x * x)) / kaiserNorm;
+                values[k] = cutoff * sinc(cutoff * distance) * window;
+                sum += values[k];
+            }
+            // 每相单独归一化，直流增益恒为 1，避免相位之间的增益差带来调制噪声
+            for (int k = 0; k < taps; k++) {
+                coefficients[p * taps + k] = (float) (values[k] / sum);
+            }
+        }
+        this.history = new float[channels][taps * 2];
+        reset();
+    }
+
+    /**
+     * 处理 frames 个交错采样帧
+     *
+     * @param out 容量至少为 {@link #maxOutputFrames(int)} 个采样帧
+     * @return 输出的采样帧数
+     */
+    int process(float[] in, int frames, float[] out) {
+        if (filled + frames > history[0].length) {
+            for (int c = 0; c < channels; c++) {
+                history[c] = Arrays.copyOf(history[c], Math.max(history[c].length * 2, filled + frames));
+            }
+        }
+        for (int c = 0; c < channels; c++) {
+            float[] channel = history[c];
+            for (int i = 0; i < frames; i++) {
+                channel[filled + i] = in[i * channels + c];
+            }
+        }
+        filled += frames;
+
+        int produced = 0;
+        while (position + taps <= filled) {
+            int offset = phase * taps;
+            for (int c = 0; c < channels; c++) {
+                out[produced * channels + c] = dot(coefficients, offset, history[c], position, taps);
+            }
+            produced++;
+            phase += step;
+            position += phase / phases;
+            phase %= phases;
+        }
+
+        // 只保留下一个窗口需要的样本
+        int keep = Math.max(0, filled - position);
+        for (int c = 0; c < channels; c++) {
+            System.arraycopy(history[c], filled - keep, history[c], 0, keep);
+        }
+        position -= filled - keep;
+        filled = keep;
+        return produced;
+    }
+
+    int maxOutputFrames(int inputFrames) {
+        return (int) ((long) (filled + inputFrames) * phases / step) + 1;
+    }
+
+    /**
+     * 定位后清空历史，重新补零对齐
+     */
+    void reset() {
+        for (float[] channel : history) {
+            Arrays.fill(channel, 0);
+        }
+        filled = halfTaps - 1;
+        position = 0;
+        phase = 0;
+    }
+
+    // 多个累加器打破加法的依赖链
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) return 1;
+        double piX = Math.PI * x;
+        return Math.sin(piX) / piX;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double half = x / 2;
+        for (int k = 1; k < 64 && term > sum * 1e-12; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,47 @@
+package indi.etern.musichud.client.music.decoder;
+
+/**
+ * 三角概率分布（TPDF）抖动：两个均匀随机数之和，幅度 ±1 LSB，降低位深时把截断失真变成与信号无关的底噪。
+ * xorshift 随机数不分配对象也不加锁，每个解码器各持一个
+ */
+final class TpdfDither {
+    private static final float UNIFORM_SCALE = 1f / (1 << 24);
+
+    private int state = (int) System.nanoTime() | 1;
+
+    /**
+     * @param scaled 以 16 位 LSB 为单位的样本值
+     */
+    short quantize(float scaled) {
+        int value = Math.round(scaled + nextUniform() + nextUniform());
+        return (short) Math.clamp(value, Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    /**
+     * 把 [-1, 1) 范围的样本加抖动量化为 16 位
+     */
+    void quantize(float[] src, int length, short[] dst) {
+        for (int i = 0; i < length; i++) {
+            dst[i] = quantize(src[i] * 32768f);
+        }
+    }
+
+    /**
+     * 不加抖动直接取整，用于本身就是 16 位精度的样本
+     */
+    static void round(float[] src, int length, short[] dst) {
+        for (int i = 0; i < length; i++) {
+            dst[i] = (short) Math.clamp(Math.round(src[i] * 32768f), Short.MIN_VALUE, Short.MAX_VALUE);
+        }
+    }
+
+    // [-0.5, 0.5) 均匀分布
+    private float nextUniform() {
+        int x = state;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        state = x;
+        return (x >> 8) * UNIFORM_SCALE;
+    }
+}
@@ -0,0 +1,309 @@
+package indi.etern.musichud.client.music.stream;
+
+import indi.etern.musichud.MusicHud;
+import indi.etern.musichud.beans.music.MusicResourceInfo;
+import indi.etern.musichud.client.config.ClientConfigDefinition;
+import net.minecraft.client.Minecraft;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 可选的本地编码数据缓存（默认关闭），以歌曲 id 和 md5 为键，按最近使用时间淘汰。
+ * 流式播放时边下载边写入，完整下载并校验 md5 后才生效，重复播放时直接内存映射读取
+ */
+public class AudioCache {
+    private static final Logger LOGGER = MusicHud.getLogger(AudioCache.class);
+    private static final String SUFFIX = ".audio";
+    private static final String PART_SUFFIX = ".part";
+    private static volatile AudioCache instance;
+    private final Set<String> writingKeys = ConcurrentHashMap.newKeySet();
+    private volatile Path directory;
+
+    public static AudioCache getInstance() {
+        if (instance == null) {
+            synchronized (AudioCache.class) {
+                if (instance == null) {
+                    instance = new AudioCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static boolean isEnabled() {
+        return ClientConfigDefinition.audioCacheEnabled.get();
+    }
+
+    private static String keyOf(MusicResourceInfo resourceInfo) {
+        String md5 = resourceInfo.getMd5();
+        if (resourceInfo.getId() <= 0 || !md5.matches("[0-9a-fA-F]{32}")) return null;
+        return resourceInfo.getId() + "-" + md5.toLowerCase();
+    }
+
+    private synchronized Path getDirectory() throws IOException {
+        if (directory == null) {
+            Path path = Minecraft.getInstance().gameDirectory.toPath().resolve(MusicHud.MOD_ID).resolve("audio-cache");
+            Files.createDirectories(path);
+            sweepParts(path);
+            directory = path;
+        }
+        return directory;
+    }
+
+    /**
+     * 删除上次异常退出时留下的未完成文件，此时还没有正在写入的缓存
+     */
+    private static void sweepParts(Path directory) {
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(path -> path.getFileName().toString().endsWith(PART_SUFFIX)).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to delete stale audio cache part {}: {}", path.getFileName(), e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Failed to sweep audio cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 优先返回本地缓存，否则打开网络资源并在后台下载到临时文件；启用缓存时网络数据会同时写入缓存
+     */
+    public AudioSource open(MusicResourceInfo resourceInfo) throws Exception {
+        String key = isEnabled() ? keyOf(resourceInfo) : null;
+        if (key != null) {
+            try {
+                Path cached = getDirectory().resolve(key + SUFFIX);
+                if (Files.isRegularFile(cached)) {
+                    Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                    LOGGER.debug("Playing {} from audio cache", key);
+                    return new MappedAudioSource(cached);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to open cached audio {}: {}", key, e.getMessage());
+            }
+        }
+        HttpAudioSource source = new HttpAudioSource(resourceInfo.getUrl(), resourceInfo.getSize());
+        return SpillAudioSource.wrap(key == null ? source : new WriteThroughAudioSource(source, resourceInfo, key));
+    }
+
+    private void commit(String key, Path part) throws IOException {
+        Path target = getDirectory().resolve(key + SUFFIX);
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug("Cached audio {}", key);
+        try {
+            evict();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to evict audio cache: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void evict() throws IOException {
+        long limit = ClientConfigDefinition.audioCacheSizeMb.get() * 1024L * 1024L;
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(getDirectory())) {
+            stream.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+        }
+        long total = 0;
+        for (Path file : files) {
+            total += sizeOf(file);
+        }
+        if (total <= limit) return;
+        files.sort(Comparator.comparing(path -> {
+            try {
+                return Files.getLastModifiedTime(path);
+            } catch (IOException e) {
+                return FileTime.fromMillis(0);
+            }
+        }));
+        for (Path file : files) {
+            if (total <= limit) break;
+            long size = sizeOf(file);
+            try {
+                Files.deleteIfExists(file);
+                total -= size;
+            } catch (IOException e) {
+                // 可能仍在播放中被映射，跳过并继续淘汰其他文件
+                LOGGER.debug("Failed to evict cached audio {}: {}", file.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 只有从头开始、顺序读到结尾的流会写入缓存；定位后打开的流直接透传
+     */
+    private class WriteThroughAudioSource implements AudioSource {
+        private final HttpAudioSource delegate;
+        private final MusicResourceInfo resourceInfo;
+        private final String key;
+
+        WriteThroughAudioSource(HttpAudioSource delegate, MusicResourceInfo resourceInfo, String key) {
+            this.delegate = delegate;
+            this.resourceInfo = resourceInfo;
+            this.key = key;
+        }
+
+        @Override
+        public InputStream open(long offset) throws IOException {
+            InputStream inputStream = delegate.open(offset);
+            if (offset != 0 || !writingKeys.add(key)) return inputStream;
+            try {
+                Path part = getDirectory().resolve(key + PART_SUFFIX);
+                FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                return new TeeInputStream(inputStream, channel, part);
+            } catch (IOException | NoSuchAlgorithmException e) {
+                writingKeys.remove(key);
+                LOGGER.warn("Failed to start caching {}: {}", key, e.getMessage());
+                return inputStream;
+            }
+        }
+
+        @Override
+        public byte[] readRange(long offset, int length) throws IOException {
+            return delegate.readRange(offset, length);
+        }
+
+        @Override
+        public long getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        @Override
+        public boolean isRangeSupported() {
+            return delegate.isRangeSupported();
+        }
+
+        @Override
+        public void setResumeListener(Runnable resumeListener) {
+            delegate.setResumeListener(resumeListener);
+        }
+
+        @Override
+        public long getMeasuredBytesPerSecond() {
+            return delegate.getMeasuredBytesPerSecond();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        private class TeeInputStream extends FilterInputStream {
+            private final FileChannel channel;
+            private final Path part;
+            private final MessageDigest digest;
+            private long written = 0;
+            private boolean done = false;
+
+            TeeInputStream(InputStream in, FileChannel channel, Path part) throws NoSuchAlgorithmException {
+                super(in);
+                this.channel = channel;
+                this.part = part;
+                this.digest = MessageDigest.getInstance("MD5");
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                int read = read(single, 0, 1);
+                return read == -1 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = in.read(b, off, len);
+                if (done) return read;
+                if (read > 0) {
+                    try {
+                        channel.write(ByteBuffer.wrap(b, off, read));
+                        digest.update(b, off, read);
+                        written += read;
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to write audio cache {}: {}", key, e.getMessage());
+                        abandon();
+                    }
+                } else if (read == -1) {
+                    finish();
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // 跳过的数据也要写入缓存
+                byte[] discard = new byte[(int) Math.min(n, 8192)];
+                long skipped = 0;
+                while (skipped < n) {
+                    int read = read(discard, 0, (int) Math.min(discard.length, n - skipped));
+                    if (read < 0) break;
+                    skipped += read;
+                }
+                return skipped;
+            }
+
+            private void finish() {
+                done = true;
+                try {
+                    channel.close();
+                    long expected = resourceInfo.getSize() > 0 ? resourceInfo.getSize() : delegate.getContentLength();
+                    String md5 = HexFormat.of().formatHex(digest.digest());
+                    if ((expected <= 0 || written == expected) && md5.equalsIgnoreCase(resourceInfo.getMd5())) {
+                        commit(key, part);
+                    } else {
+                        LOGGER.warn("Discarding audio cache {}: md5 or size mismatch", key);
+                        Files.deleteIfExists(part);
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to commit audio cache {}: {}", key, e.getMessage());
+                } finally {
+                    writingKeys.remove(key);
+                }
+            }
+
+            private void abandon() {
+                done = true;
+                try {
+                    channel.close();
+                    Files.deleteIfExists(part);
+                } catch (IOException ignored) {
+                } finally {
+                    writingKeys.remove(key);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!done) {
+                    abandon();
+                }
+                super.close();
+            }
+        }
+    }
+}
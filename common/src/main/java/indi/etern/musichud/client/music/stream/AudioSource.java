@@ -0,0 +1,49 @@
+package indi.etern.musichud.client.music.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface AudioSource {
+    /**
+     * 打开从指定字节偏移开始的编码数据流
+     */
+    InputStream open(long offset) throws IOException;
+
+    /**
+     * 读取从 offset 开始最多 length 字节，用于定位时的探测请求
+     */
+    default byte[] readRange(long offset, int length) throws IOException {
+        try (InputStream inputStream = open(offset)) {
+            return inputStream.readNBytes(length);
+        }
+    }
+
+    /**
+     * @return 资源总字节数，未知时为 -1
+     */
+    long getContentLength();
+
+    /**
+     * @return 是否可以低成本地从任意偏移开始读取
+     */
+    boolean isRangeSupported();
+
+    /**
+     * 网络中断、开始断点续传时调用；本地数据源忽略
+     */
+    default void setResumeListener(Runnable resumeListener) {
+    }
+
+    /**
+     * @return 测得的网络吞吐量（字节/秒），本地数据源或尚未测得时为 -1
+     */
+    default long getMeasuredBytesPerSecond() {
+        return -1;
+    }
+
+    /**
+     * 不再使用时调用，停止后台下载并释放临时文件
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,78 @@
+package indi.etern.musichud.client.music.stream;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 音频 CDN 的可互换边缘节点，以及对冲请求的截止时间。
+ * 同一组内的主机用相同路径提供同一份文件，首选节点响应慢时可以改向组内其他主机请求
+ */
+final class CdnEdges {
+    private static final List<List<String>> EDGE_GROUPS = List.of(
+            List.of("m701.music.126.net", "m801.music.126.net"),
+            List.of("m7.music.126.net", "m8.music.126.net"),
+            List.of("m7c.music.126.net", "m8c.music.126.net")
+    );
+    private static final int SAMPLE_COUNT = 32;
+    // 样本足够后才按分位数计算截止时间
+    private static final int MIN_SAMPLES = 8;
+    private static final double PERCENTILE = 0.9;
+    private static final long DEFAULT_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(800);
+    private static final long MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long MAX_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(3000);
+
+    // 最近的首字节耗时，环形覆盖
+    private static final long[] samples = new long[SAMPLE_COUNT];
+    private static int sampleCount = 0;
+    private static int nextSample = 0;
+
+    private CdnEdges() {
+    }
+
+    /**
+     * @return 与 url 同组的其他主机上的同一资源，不属于任何已知组时为空
+     */
+    static List<URL> alternatesOf(URL url) {
+        String host = url.getHost();
+        List<URL> alternates = new ArrayList<>();
+        for (List<String> group : EDGE_GROUPS) {
+            if (!group.contains(host)) continue;
+            String spec = url.toString();
+            int hostStart = spec.indexOf(host);
+            for (String alternate : group) {
+                if (alternate.equals(host)) continue;
+                try {
+                    alternates.add(URI.create(spec.substring(0, hostStart) + alternate
+                            + spec.substring(hostStart + host.length())).toURL());
+                } catch (Exception ignored) {
+                }
+            }
+        }
+        return alternates;
+    }
+
+    /**
+     * 记录一次从发起请求到收到响应头的耗时
+     */
+    static synchronized void recordFirstByte(long nanos) {
+        samples[nextSample] = nanos;
+        nextSample = (nextSample + 1) % SAMPLE_COUNT;
+        sampleCount = Math.min(sampleCount + 1, SAMPLE_COUNT);
+    }
+
+    /**
+     * 首选节点超过这个时间仍没有响应就向备用节点发起请求，取近期首字节耗时的 P90，
+     * 正常情况下只有约一成的请求会对冲
+     */
+    static synchronized long hedgeDelayNanos() {
+        if (sampleCount < MIN_SAMPLES) return DEFAULT_DELAY_NANOS;
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        long percentile = sorted[(int) Math.ceil(PERCENTILE * sampleCount) - 1];
+        return Math.clamp(percentile, MIN_DELAY_NANOS, MAX_DELAY_NANOS);
+    }
+}
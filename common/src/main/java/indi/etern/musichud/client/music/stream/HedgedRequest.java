@@ -0,0 +1,119 @@
+package indi.etern.musichud.client.music.stream;
+
+import indi.etern.musichud.MusicHud;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 依次向候选节点发起同一请求：前一个在截止时间内没有返回响应头或已经失败时启动下一个，
+ * 采用最先返回的连接并断开其余连接
+ */
+class HedgedRequest {
+    private static final Logger LOGGER = MusicHud.getLogger(HedgedRequest.class);
+
+    private final List<URL> candidates;
+    private final Connector connector;
+    private final CompletableFuture<Response> winner = new CompletableFuture<>();
+    private final List<HttpURLConnection> connections = new ArrayList<>();
+    private int launched = 0;
+    private int failed = 0;
+
+    HedgedRequest(List<URL> candidates, Connector connector) {
+        this.candidates = candidates;
+        this.connector = connector;
+    }
+
+    Response execute(long hedgeDelayNanos) throws IOException {
+        launchNext();
+        try {
+            while (true) {
+                try {
+                    return winner.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (!launchNext()) return winner.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            winner.completeExceptionally(e);
+            throw new InterruptedIOException("Interrupted while connecting");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        } finally {
+            disconnectLosers();
+        }
+    }
+
+    private synchronized boolean launchNext() {
+        if (launched >= candidates.size() || winner.isDone()) return false;
+        URL url = candidates.get(launched++);
+        if (launched > 1) {
+            LOGGER.debug("Hedging audio request to {}", url.getHost());
+        }
+        MusicHud.EXECUTOR.execute(() -> attempt(url));
+        return true;
+    }
+
+    private void attempt(URL url) {
+        long start = System.nanoTime();
+        try {
+            HttpURLConnection connection = connector.connect(url);
+            synchronized (this) {
+                if (winner.isDone()) {
+                    connection.disconnect();
+                    return;
+                }
+                connections.add(connection);
+            }
+            int responseCode = connection.getResponseCode();
+            CdnEdges.recordFirstByte(System.nanoTime() - start);
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                connection.disconnect();
+                throw new IOException("HTTP " + responseCode + " from " + url.getHost());
+            }
+            if (!winner.complete(new Response(url, connection))) {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failed++;
+                // 失败的节点不必等到截止时间，立即换下一个
+                if (!launchNext() && failed == launched) {
+                    winner.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private synchronized void disconnectLosers() {
+        Response response = winner.isCompletedExceptionally() ? null : winner.getNow(null);
+        HttpURLConnection kept = response == null ? null : response.connection();
+        for (HttpURLConnection connection : connections) {
+            if (connection != kept) {
+                connection.disconnect();
+            }
+        }
+        connections.clear();
+    }
+
+    /**
+     * 创建已设置好请求头、尚未连接的连接
+     */
+    @FunctionalInterface
+    interface Connector {
+        HttpURLConnection connect(URL url) throws IOException;
+    }
+
+    record Response(URL url, HttpURLConnection connection) {
+    }
+}
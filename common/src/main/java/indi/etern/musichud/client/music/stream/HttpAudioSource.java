@@ -0,0 +1,297 @@
+package indi.etern.musichud.client.music.stream;
+
+import indi.etern.musichud.MusicHud;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HttpAudioSource implements AudioSource {
+    private static final Logger LOGGER = MusicHud.getLogger(HttpAudioSource.class);
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 10000;
+    private static final int MAX_RESUME_ATTEMPTS = 5;
+    private static final int RESUME_DELAY_ADDITIONAL_MS = 500;
+    // 剩余数据不少于这么多时才分段并行下载
+    private static final long SEGMENTED_MIN_LENGTH = 4L * SegmentedInputStream.SEGMENT_SIZE;
+    // 对冲请求胜出后改为胜出的边缘节点
+    private volatile URL url;
+    // 同一资源在其他 CDN 边缘节点上的地址
+    private final List<URL> alternates;
+    private volatile boolean edgeChosen = false;
+    @Getter
+    private volatile long contentLength = -1;
+    @Getter
+    private volatile boolean rangeSupported = false;
+    // ETag 或 Last-Modified，断点续传时用于 If-Range
+    private volatile String validator;
+    /**
+     * 网络中断、开始断点续传时调用
+     */
+    @Setter
+    private Runnable resumeListener;
+    // 阻塞在网络读取上的累计字节数和耗时，用于估算吞吐量
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicLong transferNanos = new AtomicLong();
+
+    public HttpAudioSource(String urlString) throws URISyntaxException, IOException {
+        this(urlString, -1);
+    }
+
+    /**
+     * @param expectedLength 已知的资源大小，未知时传 -1，以响应头为准
+     */
+    public HttpAudioSource(String urlString, long expectedLength) throws URISyntaxException, IOException {
+        this.url = new URI(urlString).toURL();
+        this.alternates = CdnEdges.alternatesOf(url);
+        if (expectedLength > 0) {
+            this.contentLength = expectedLength;
+        }
+    }
+
+    /**
+     * 服务器支持 Range 且剩余数据足够大时分段并行下载，否则使用单连接的可续传流
+     */
+    @Override
+    public InputStream open(long offset) throws IOException {
+        ResumableInputStream inputStream = new ResumableInputStream(offset, openAt(offset, false));
+        long length = contentLength;
+        if (rangeSupported && length > 0 && length - offset >= SEGMENTED_MIN_LENGTH) {
+            return new SegmentedInputStream(this, offset, length, inputStream);
+        }
+        return inputStream;
+    }
+
+    /**
+     * @param resuming 为 true 时若资源已变化（If-Range 不匹配）直接失败，而不是丢弃字节
+     */
+    private InputStream openAt(long offset, boolean resuming) throws IOException {
+        String validator = this.validator;
+        HttpURLConnection connection = request(url -> {
+            HttpURLConnection candidate = openConnection(url);
+            if (offset > 0) {
+                candidate.setRequestProperty("Range", "bytes=" + offset + "-");
+                if (validator != null) {
+                    candidate.setRequestProperty("If-Range", validator);
+                }
+            }
+            return candidate;
+        });
+        int responseCode = connection.getResponseCode();
+        InputStream inputStream = connection.getInputStream();
+        if (validator == null) {
+            String eTag = connection.getHeaderField("ETag");
+            // 弱 ETag 不能用于 If-Range
+            if (eTag != null && !eTag.startsWith("W/")) {
+                this.validator = eTag;
+            } else {
+                this.validator = connection.getHeaderField("Last-Modified");
+            }
+        }
+        if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+            rangeSupported = true;
+            long total = parseContentRangeTotal(connection.getHeaderField("Content-Range"));
+            if (total > 0) {
+                contentLength = total;
+            }
+        } else {
+            long length = connection.getContentLengthLong();
+            if (offset > 0) {
+                if (resuming && rangeSupported && validator != null) {
+                    inputStream.close();
+                    throw new IOException("Resource changed since download started");
+                }
+                // 服务器不支持 Range，只能丢弃前面的字节
+                rangeSupported = false;
+                LOGGER.debug("Server ignored range request, skipping {} bytes", offset);
+                inputStream.skipNBytes(offset);
+            } else {
+                rangeSupported = "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+            }
+            if (length > 0) {
+                contentLength = length;
+            }
+        }
+        return inputStream;
+    }
+
+    @Override
+    public byte[] readRange(long offset, int length) throws IOException {
+        if (!rangeSupported) {
+            return AudioSource.super.readRange(offset, length);
+        }
+        String validator = this.validator;
+        HttpURLConnection connection = request(url -> {
+            HttpURLConnection candidate = openConnection(url);
+            candidate.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+            if (validator != null) {
+                candidate.setRequestProperty("If-Range", validator);
+            }
+            return candidate;
+        });
+        try (InputStream inputStream = connection.getInputStream()) {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                if (validator != null) {
+                    throw new IOException("Resource changed since download started");
+                }
+                rangeSupported = false;
+                inputStream.skipNBytes(offset);
+            }
+            return inputStream.readNBytes(length);
+        }
+    }
+
+    void recordTransfer(long bytes, long nanos) {
+        transferredBytes.addAndGet(bytes);
+        transferNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public long getMeasuredBytesPerSecond() {
+        long nanos = transferNanos.get();
+        // 样本太少时不可靠
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(200)) return -1;
+        return transferredBytes.get() * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * 发起请求并等待响应头。第一次请求时若有备用边缘节点则对冲，之后固定使用胜出的节点
+     */
+    private HttpURLConnection request(HedgedRequest.Connector connector) throws IOException {
+        URL url = this.url;
+        if (edgeChosen || alternates.isEmpty()) {
+            long start = System.nanoTime();
+            HttpURLConnection connection = connector.connect(url);
+            connection.getResponseCode();
+            CdnEdges.recordFirstByte(System.nanoTime() - start);
+            return connection;
+        }
+        List<URL> candidates = new ArrayList<>(alternates.size() + 1);
+        candidates.add(url);
+        candidates.addAll(alternates);
+        HedgedRequest.Response response = new HedgedRequest(candidates, connector).execute(CdnEdges.hedgeDelayNanos());
+        // URL.equals 会解析域名，这里只需要比较是否是同一个对象
+        if (response.url() != url) {
+            LOGGER.debug("Audio edge {} answered first, switching from {}", response.url().getHost(), url.getHost());
+            this.url = response.url();
+        }
+        edgeChosen = true;
+        return response.connection();
+    }
+
+    private static HttpURLConnection openConnection(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        return connection;
+    }
+
+    private static long parseContentRangeTotal(String contentRange) {
+        // bytes 100-999/1000
+        if (contentRange == null) return -1;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || slash == contentRange.length() - 1) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 记录已读取的字节位置，连接出错时用 Range + If-Range 从断点继续，
+     * 对上层解码器而言数据是无缝衔接的
+     */
+    private class ResumableInputStream extends InputStream {
+        private InputStream current;
+        private long position;
+        private volatile boolean closed = false;
+
+        ResumableInputStream(long position, InputStream current) {
+            this.position = position;
+            this.current = current;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int attempt = 0;
+            while (true) {
+                try {
+                    long start = System.nanoTime();
+                    int read = current.read(b, off, len);
+                    if (read > 0) {
+                        recordTransfer(read, System.nanoTime() - start);
+                        position += read;
+                    } else if (read == -1 && contentLength > 0 && position < contentLength) {
+                        throw new IOException("Connection closed at " + position + " of " + contentLength + " bytes");
+                    }
+                    return read;
+                } catch (IOException e) {
+                    IOException failure = e;
+                    while (true) {
+                        if (closed || Thread.currentThread().isInterrupted() || failure instanceof InterruptedIOException
+                                || !rangeSupported || attempt >= MAX_RESUME_ATTEMPTS) {
+                            throw failure;
+                        }
+                        attempt++;
+                        LOGGER.warn("Audio stream interrupted at byte {} (resume attempt {}): {}", position, attempt, failure.getMessage());
+                        if (resumeListener != null) {
+                            resumeListener.run();
+                        }
+                        try {
+                            resume(attempt);
+                            break;
+                        } catch (IOException resumeFailure) {
+                            failure = resumeFailure;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void resume(int attempt) throws IOException {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+            try {
+                //noinspection BusyWait
+                Thread.sleep((long) (attempt - 1) * RESUME_DELAY_ADDITIONAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while resuming");
+            }
+            current = openAt(position, true);
+            LOGGER.debug("Resumed audio stream at byte {}", position);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return current.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package indi.etern.musichud.client.music.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 通过内存映射读取本地缓存的编码数据，任意偏移的读取都不需要系统调用
+ */
+public class MappedAudioSource implements AudioSource {
+    private final MappedByteBuffer buffer;
+
+    public MappedAudioSource(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 映射在通道关闭后仍然有效
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public InputStream open(long offset) {
+        return new ByteBufferInputStream(buffer.slice((int) Math.min(offset, buffer.capacity()),
+                buffer.capacity() - (int) Math.min(offset, buffer.capacity())));
+    }
+
+    @Override
+    public byte[] readRange(long offset, int length) {
+        int start = (int) Math.min(offset, buffer.capacity());
+        byte[] data = new byte[Math.min(length, buffer.capacity() - start)];
+        buffer.get(start, data);
+        return data;
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public boolean isRangeSupported() {
+        return true;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package indi.etern.musichud.client.music.stream;
+
+import indi.etern.musichud.MusicHud;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 把资源切成固定大小的字节区间，用多个连接并行下载后按顺序拼接。
+ * 第一个区间直接复用已经打开的连接；并发数根据测得的吞吐量逐步调整
+ */
+class SegmentedInputStream extends InputStream {
+    private static final Logger LOGGER = MusicHud.getLogger(SegmentedInputStream.class);
+    static final int SEGMENT_SIZE = 512 * 1024;
+    static final int MAX_CONNECTIONS = 4;
+    private static final int MAX_SEGMENT_ATTEMPTS = 3;
+    // 每完成几个区间评估一次并发数
+    private static final int EVALUATE_INTERVAL = 3;
+
+    private final HttpAudioSource source;
+    private final long end;
+    private final ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+    private InputStream firstStream;
+    private long firstRemaining;
+    private long nextFetchOffset;
+    private byte[] current;
+    private int currentPosition;
+    private int concurrency = 1;
+    private double lastAggregateRate = 0;
+    private int samples = 0;
+    private volatile boolean closed = false;
+
+    SegmentedInputStream(HttpAudioSource source, long offset, long end, InputStream firstStream) {
+        this.source = source;
+        this.end = end;
+        this.firstStream = firstStream;
+        this.firstRemaining = Math.min(SEGMENT_SIZE, end - offset);
+        this.nextFetchOffset = offset + firstRemaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (firstStream != null) {
+            int read = firstStream.read(b, off, (int) Math.min(len, firstRemaining));
+            if (read < 0) throw new IOException("Connection closed before first segment completed");
+            firstRemaining -= read;
+            if (firstRemaining == 0) {
+                firstStream.close();
+                firstStream = null;
+                // 首个区间读完后再开始并行，避免只探测格式就被关闭的流浪费带宽
+                concurrency = 2;
+            }
+            return read;
+        }
+        if (current == null || currentPosition == current.length) {
+            if (!nextSegment()) return -1;
+        }
+        int read = Math.min(len, current.length - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, read);
+        currentPosition += read;
+        return read;
+    }
+
+    private boolean nextSegment() throws IOException {
+        schedule();
+        Segment segment = inFlight.poll();
+        if (segment == null) return false;
+        Fetched fetched;
+        try {
+            fetched = segment.data.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for segment");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        }
+        current = fetched.data;
+        currentPosition = 0;
+        adjustConcurrency(segment.length, fetched.nanos);
+        schedule();
+        return true;
+    }
+
+    private void schedule() {
+        while (!closed && inFlight.size() < concurrency && nextFetchOffset < end) {
+            long offset = nextFetchOffset;
+            int length = (int) Math.min(SEGMENT_SIZE, end - offset);
+            nextFetchOffset += length;
+            inFlight.add(new Segment(offset, length,
+                    CompletableFuture.supplyAsync(() -> fetch(offset, length), MusicHud.EXECUTOR)));
+        }
+    }
+
+    private Fetched fetch(long offset, int length) {
+        IOException failure = null;
+        for (int attempt = 1; attempt <= MAX_SEGMENT_ATTEMPTS && !closed; attempt++) {
+            try {
+                long start = System.nanoTime();
+                byte[] data = source.readRange(offset, length);
+                if (data.length == length) return new Fetched(data, System.nanoTime() - start);
+                failure = new IOException("Short segment at " + offset + ": " + data.length + " of " + length + " bytes");
+            } catch (IOException e) {
+                failure = e;
+            }
+            LOGGER.debug("Segment at {} failed (attempt {}): {}", offset, attempt, failure.getMessage());
+        }
+        throw new CompletionException(failure != null ? failure : new IOException("Stream closed"));
+    }
+
+    /**
+     * 增加连接后总吞吐明显上升说明单连接受限，继续增加；明显下降则回退
+     */
+    private void adjustConcurrency(int length, long elapsedNanos) {
+        if (elapsedNanos <= 0) return;
+        double aggregateRate = (double) length / elapsedNanos * concurrency;
+        // 并行下载时按连接数折算为总吞吐量对应的耗时
+        source.recordTransfer(length, elapsedNanos / concurrency);
+        if (lastAggregateRate == 0) {
+            lastAggregateRate = aggregateRate;
+            return;
+        }
+        if (++samples < EVALUATE_INTERVAL) return;
+        samples = 0;
+        if (aggregateRate > lastAggregateRate * 1.1 && concurrency < MAX_CONNECTIONS) {
+            concurrency++;
+        } else if (aggregateRate < lastAggregateRate * 0.9 && concurrency > 1) {
+            concurrency--;
+        }
+        lastAggregateRate = aggregateRate;
+        LOGGER.debug("Segment throughput {} KB/s, using {} connections", (long) (aggregateRate * 1_000_000), concurrency);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Segment segment : inFlight) {
+            segment.data.cancel(false);
+        }
+        inFlight.clear();
+        if (firstStream != null) {
+            firstStream.close();
+            firstStream = null;
+        }
+    }
+
+    private record Segment(long offset, int length, CompletableFuture<Fetched> data) {
+    }
+
+    private record Fetched(byte[] data, long nanos) {
+    }
+}
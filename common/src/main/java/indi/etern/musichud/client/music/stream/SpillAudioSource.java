@@ -0,0 +1,250 @@
+package indi.etern.musichud.client.music.stream;
+
+import indi.etern.musichud.MusicHud;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Future;
+
+/**
+ * 后台以网络允许的最快速度把编码数据顺序下载到临时文件，解码器从文件读取，
+ * 网络读取不再受播放速度限制：通常几秒内整首歌就已在本地，之后的网络故障不影响播放
+ */
+class SpillAudioSource implements AudioSource {
+    private static final Logger LOGGER = MusicHud.getLogger(SpillAudioSource.class);
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_FILL_ATTEMPTS = 3;
+    // 读取位置超出已下载部分这么多时直接向网络请求，不等待顺序下载追上
+    private static final long DIRECT_READ_GAP = 1024 * 1024;
+    private static final long WAIT_MILLIS = 500;
+
+    private final AudioSource delegate;
+    // 以 DELETE_ON_CLOSE 打开，关闭通道即删除文件
+    private final FileChannel channel;
+    private final int length;
+    // 文件开头已下载的连续字节数
+    private volatile int filled = 0;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+    private Future<?> fillFuture;
+
+    private SpillAudioSource(AudioSource delegate, FileChannel channel, int length) {
+        this.delegate = delegate;
+        this.channel = channel;
+        this.length = length;
+    }
+
+    /**
+     * 资源大小未知或无法创建临时文件时直接返回 delegate
+     */
+    static AudioSource wrap(AudioSource delegate) {
+        long length = delegate.getContentLength();
+        if (length <= 0 || length > Integer.MAX_VALUE) return delegate;
+        Path file = null;
+        try {
+            file = Files.createTempFile(MusicHud.MOD_ID + "-", ".spill");
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            SpillAudioSource source = new SpillAudioSource(delegate, channel, (int) length);
+            source.startFilling();
+            return source;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to create spill file, streaming directly: {}", e.getMessage());
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                }
+            }
+            return delegate;
+        }
+    }
+
+    private synchronized void startFilling() {
+        if (closed || filled == length || (fillFuture != null && !fillFuture.isDone())) return;
+        failure = null;
+        fillFuture = MusicHud.EXECUTOR.submit(this::fill);
+    }
+
+    private void fill() {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int attempt = 0;
+        while (!closed && filled < length) {
+            // 第一次从头顺序读取，启用缓存时同时写入缓存；失败后从已下载的位置续传
+            try (InputStream inputStream = delegate.open(filled)) {
+                int read;
+                while (!closed && filled < length
+                        && (read = inputStream.read(chunk, 0, Math.min(CHUNK_SIZE, length - filled))) > 0) {
+                    writeFully(ByteBuffer.wrap(chunk, 0, read), filled);
+                    filled += read;
+                    attempt = 0;
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+                if (filled < length && !closed) {
+                    throw new IOException("Stream ended at " + filled + " of " + length + " bytes");
+                }
+            } catch (IOException e) {
+                if (closed) break;
+                if (++attempt >= MAX_FILL_ATTEMPTS || filled > 0 && !delegate.isRangeSupported()) {
+                    LOGGER.warn("Spill download failed at {} of {} bytes: {}", filled, length, e.getMessage());
+                    failure = e;
+                    break;
+                }
+                LOGGER.debug("Spill download interrupted at {} bytes (attempt {}): {}", filled, attempt, e.getMessage());
+            }
+        }
+        if (filled == length) {
+            LOGGER.debug("Spilled {} bytes", length);
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void writeFully(ByteBuffer data, int position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    /**
+     * 从已下载的部分读取，不会越过 filled
+     */
+    private void readFully(ByteBuffer data, int position) throws IOException {
+        while (data.hasRemaining()) {
+            int read = channel.read(data, position);
+            if (read < 0) throw new IOException("Spill file truncated at " + position);
+            position += read;
+        }
+    }
+
+    /**
+     * 等待直到 position 处的数据已下载
+     *
+     * @return 可以读取的字节数，到达结尾时为 0
+     */
+    private int awaitFilled(int position) throws IOException {
+        if (position >= length) return 0;
+        int available = filled - position;
+        if (available > 0) return available;
+        synchronized (this) {
+            while ((available = filled - position) <= 0) {
+                if (closed) throw new IOException("Source closed");
+                IOException failure = this.failure;
+                if (failure != null) {
+                    // 让解码器的重试重新开始下载
+                    startFilling();
+                    throw failure;
+                }
+                try {
+                    wait(WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for spill data");
+                }
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public InputStream open(long offset) throws IOException {
+        if (offset > filled + DIRECT_READ_GAP && delegate.isRangeSupported()) {
+            return delegate.open(offset);
+        }
+        return new SpillInputStream((int) Math.min(offset, length));
+    }
+
+    @Override
+    public byte[] readRange(long offset, int length) throws IOException {
+        int start = (int) Math.min(offset, this.length);
+        int end = (int) Math.min((long) start + length, this.length);
+        if (end > filled) return delegate.readRange(offset, length);
+        byte[] data = new byte[end - start];
+        readFully(ByteBuffer.wrap(data), start);
+        return data;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isRangeSupported() {
+        return filled == length || delegate.isRangeSupported();
+    }
+
+    @Override
+    public void setResumeListener(Runnable resumeListener) {
+        delegate.setResumeListener(resumeListener);
+    }
+
+    @Override
+    public long getMeasuredBytesPerSecond() {
+        return delegate.getMeasuredBytesPerSecond();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (fillFuture != null) {
+            fillFuture.cancel(true);
+        }
+        delegate.close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close spill file: {}", e.getMessage());
+        }
+    }
+
+    private class SpillInputStream extends InputStream {
+        private int position;
+
+        SpillInputStream(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            int available = awaitFilled(position);
+            if (available == 0) return -1;
+            int read = Math.min(len, available);
+            readFully(ByteBuffer.wrap(b, off, read), position);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return Math.max(0, filled - position);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package indi.etern.musichud.client.services;
+
+import dev.architectury.event.events.client.ClientPlayerEvent;
+import dev.architectury.networking.NetworkManager;
+import indi.etern.musichud.MusicHud;
+import indi.etern.musichud.interfaces.ClientRegister;
+import indi.etern.musichud.interfaces.RegisterMark;
+import indi.etern.musichud.network.requestResponseCycle.ClockSyncRequest;
+import indi.etern.musichud.network.requestResponseCycle.ClockSyncResponse;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 类似 NTP 的对时：连接时连续发送几次、之后定期发送对时请求，
+ * 用往返时延补偿估算服务器时钟与本地单调时钟的差值，往返时延异常大的样本直接丢弃。
+ * 服务器发来的时间都应经过这里换算成本地时间
+ */
+public class ClockSyncService {
+    private static final Logger logger = MusicHud.getLogger(ClockSyncService.class);
+    private static final int BURST_COUNT = 5;
+    private static final long BURST_INTERVAL_MILLIS = 100;
+    private static final long PERIODIC_INTERVAL_MILLIS = 30_000;
+    private static final int SAMPLE_COUNT = 8;
+    // 往返时延超过最小值的两倍加上这个余量视为异常样本
+    private static final long OUTLIER_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static volatile ClockSyncService instance;
+
+    private final long[] sampleOffsets = new long[SAMPLE_COUNT];
+    private final long[] sampleRoundTrips = new long[SAMPLE_COUNT];
+    private int sampleCount = 0;
+    private int nextSample = 0;
+    // 服务器 epoch 纳秒 - 本地 System.nanoTime()；对时前假设两边时钟一致
+    private volatile long offsetNanos = defaultOffsetNanos();
+    private volatile boolean synced = false;
+    private volatile Thread syncThread;
+
+    public static ClockSyncService getInstance() {
+        if (instance == null) {
+            synchronized (ClockSyncService.class) {
+                if (instance == null) {
+                    instance = new ClockSyncService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static long defaultOffsetNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+    }
+
+    public synchronized void start() {
+        stop();
+        Thread thread = Thread.ofVirtual().name("Clock Sync").unstarted(() -> {
+            try {
+                for (int i = 0; i < BURST_COUNT; i++) {
+                    sendRequest();
+                    Thread.sleep(BURST_INTERVAL_MILLIS);
+                }
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(PERIODIC_INTERVAL_MILLIS);
+                    sendRequest();
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        syncThread = thread;
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        Thread thread = syncThread;
+        syncThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        synchronized (sampleOffsets) {
+            sampleCount = 0;
+            nextSample = 0;
+        }
+        synced = false;
+        offsetNanos = defaultOffsetNanos();
+    }
+
+    private void sendRequest() {
+        NetworkManager.sendToServer(new ClockSyncRequest(System.nanoTime()));
+    }
+
+    public void onResponse(ClockSyncResponse response, long receiveNanos) {
+        long serverReceiveNanos = TimeUnit.MILLISECONDS.toNanos(response.serverReceiveMillis());
+        long serverSendNanos = TimeUnit.MILLISECONDS.toNanos(response.serverSendMillis());
+        long roundTrip = (receiveNanos - response.clientSendNanos()) - (serverSendNanos - serverReceiveNanos);
+        if (roundTrip < 0) return;
+        long offset = ((serverReceiveNanos - response.clientSendNanos()) + (serverSendNanos - receiveNanos)) / 2;
+        synchronized (sampleOffsets) {
+            sampleOffsets[nextSample] = offset;
+            sampleRoundTrips[nextSample] = roundTrip;
+            nextSample = (nextSample + 1) % SAMPLE_COUNT;
+            sampleCount = Math.min(sampleCount + 1, SAMPLE_COUNT);
+            offsetNanos = estimateOffset();
+        }
+        if (!synced) {
+            synced = true;
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        logger.debug("Clock sync sample: rtt {} ms, offset to local clock {} ms",
+                TimeUnit.NANOSECONDS.toMillis(roundTrip), TimeUnit.NANOSECONDS.toMillis(offsetNanos - defaultOffsetNanos()));
+    }
+
+    /**
+     * 往返时延越小，对称假设带来的误差越小：丢弃异常样本后取时延最小的一半样本的平均值
+     */
+    private long estimateOffset() {
+        long minRoundTrip = Long.MAX_VALUE;
+        for (int i = 0; i < sampleCount; i++) {
+            minRoundTrip = Math.min(minRoundTrip, sampleRoundTrips[i]);
+        }
+        long limit = minRoundTrip * 2 + OUTLIER_SLACK_NANOS;
+        Integer[] accepted = new Integer[sampleCount];
+        int acceptedCount = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            if (sampleRoundTrips[i] <= limit) {
+                accepted[acceptedCount++] = i;
+            }
+        }
+        Arrays.sort(accepted, 0, acceptedCount, (a, b) -> Long.compare(sampleRoundTrips[a], sampleRoundTrips[b]));
+        int used = Math.max(1, acceptedCount / 2);
+        long sum = 0;
+        for (int i = 0; i < used; i++) {
+            sum += sampleOffsets[accepted[i]];
+        }
+        return sum / used;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * 等待第一次对时完成，超时后按未校准的时钟继续
+     */
+    public void awaitSynced(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            long remaining;
+            while (!synced && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+        }
+    }
+
+    public long serverTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() + offsetNanos);
+    }
+
+    /**
+     * 把服务器 epoch 毫秒时间换算成本地 {@link System#nanoTime()} 时间
+     */
+    public long toLocalNanos(long serverEpochMillis) {
+        return TimeUnit.MILLISECONDS.toNanos(serverEpochMillis) - offsetNanos;
+    }
+
+    /**
+     * 把服务器时间换算成本地时钟下的同一时刻
+     */
+    public ZonedDateTime toLocalTime(ZonedDateTime serverTime) {
+        long localEpochMillis = System.currentTimeMillis()
+                + TimeUnit.NANOSECONDS.toMillis(toLocalNanos(serverTime.toInstant().toEpochMilli()) - System.nanoTime());
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(localEpochMillis), ZoneId.systemDefault());
+    }
+
+    @RegisterMark
+    public static class RegisterImpl implements ClientRegister {
+        @Override
+        public void register() {
+            ClientPlayerEvent.CLIENT_PLAYER_QUIT.register(player -> {
+                getInstance().stop();
+            });
+        }
+    }
+}
@@ -24,6 +24,7 @@ import indi.etern.musichud.interfaces.RegisterMark;
 import indi.etern.musichud.network.pushMessages.c2s.AddPlaylistToIdlePlaySourceMessage;
 import indi.etern.musichud.network.pushMessages.c2s.ClientPushMusicToQueueMessage;
 import indi.etern.musichud.network.pushMessages.c2s.ClientRemoveMusicFromQueueMessage;
+import indi.etern.musichud.network.pushMessages.c2s.PlaybackStatsMessage;
 import indi.etern.musichud.network.pushMessages.c2s.RemovePlaylistFromIdlePlaySourceMessage;
 import indi.etern.musichud.network.requestResponseCycle.GetPlaylistDetailRequest;
 import indi.etern.musichud.network.requestResponseCycle.GetPlaylistDetailResponse;
@@ -36,6 +37,7 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
@@ -47,6 +49,10 @@ public class MusicService {
             .expireAfterAccess(5, TimeUnit.MINUTES)
             .maximumSize(20)
             .build();
+    // 在当前歌曲结束前多久开始预取下一首
+    private static final long PREFETCH_LEAD_MILLIS = 15000;
+    // 离服务器安排的开始时刻还有多久时切换播放器
+    private static final long START_HANDOFF_MILLIS = 300;
     private static volatile MusicService instance;
     private static ProfileConfigData profileConfigData = ProfileConfigData.getInstance();
     @Getter
@@ -67,6 +73,9 @@ public class MusicService {
     private final List<BiConsumer<Integer, MusicDetail>> musicQueueRemoveListeners = new ArrayList<>();
     @Getter
     private boolean idlePlaySourceLoaded = false;
+    private Future<?> pendingStart;
+    // 等待切换期间收到的下一首，切换后再预取，避免占用唯一的备用轨道
+    private MusicDetail deferredNext;
 
     public static MusicService getInstance() {
         if (instance == null) {
@@ -208,14 +217,37 @@ public class MusicService {
                     Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
                 });
             }
+            if (pendingStart != null) {
+                pendingStart.cancel(true);
+                pendingStart = null;
+            }
+            deferredNext = null;
             if (!musicDetail.equals(MusicDetail.NONE)) {
                 loadResource(musicDetail);
-                StreamAudioPlayer streamAudioPlayer = StreamAudioPlayer.getInstance();
-                streamAudioPlayer.playAsyncFromUrl(resourceInfo.getUrl(), resourceInfo.getType(), serverStartTime).thenAccept(zonedDateTime -> {
-                    NowPlayingInfo.getInstance().switchMusic(musicDetail, resourceInfo, zonedDateTime);
-                }).exceptionally(e -> {
-                    return null;//TODO display error in hud
-                });
+                long leadMillis = serverStartTime == null ? 0 : Duration.between(ZonedDateTime.now(), serverStartTime).toMillis();
+                if (leadMillis > START_HANDOFF_MILLIS) {
+                    // 上一首继续播放，新歌曲先在后台预缓冲，快到开始时刻时再切换
+                    StreamAudioPlayer.getInstance().prefetchNext(resourceInfo, ZonedDateTime.now());
+                    pendingStart = MusicHud.EXECUTOR.submit(() -> {
+                        try {
+                            Thread.sleep(leadMillis - START_HANDOFF_MILLIS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        synchronized (this) {
+                            if (Thread.interrupted()) return;
+                            pendingStart = null;
+                            startPlaying(musicDetail, resourceInfo, serverStartTime);
+                            if (deferredNext != null) {
+                                MusicDetail next = deferredNext;
+                                deferredNext = null;
+                                prefetchNext(musicDetail, next);
+                            }
+                        }
+                    });
+                } else {
+                    startPlaying(musicDetail, resourceInfo, serverStartTime);
+                }
             } else {
                 NowPlayingInfo.getInstance().switchMusic(MusicDetail.NONE, MusicResourceInfo.NONE, null);
                 StreamAudioPlayer streamAudioPlayer = StreamAudioPlayer.getInstance();
@@ -224,6 +256,32 @@ public class MusicService {
         }
     }
 
+    private void startPlaying(MusicDetail musicDetail, MusicResourceInfo resourceInfo, ZonedDateTime serverStartTime) {
+        StreamAudioPlayer streamAudioPlayer = StreamAudioPlayer.getInstance();
+        streamAudioPlayer.playAsync(resourceInfo, serverStartTime).thenAccept(zonedDateTime -> {
+            NowPlayingInfo.getInstance().switchMusic(musicDetail, resourceInfo, zonedDateTime);
+        }).exceptionally(e -> {
+            return null;//TODO display error in hud
+        });
+    }
+
+    /**
+     * 在当前歌曲结束前预取下一首歌，服务器已为 next 解析好资源信息；
+     * 当前歌曲还在等待开始时刻时推迟到切换之后
+     */
+    public synchronized void prefetchNext(MusicDetail current, MusicDetail next) {
+        if (!ClientConfigDefinition.enable.get() || next.equals(MusicDetail.NONE)) return;
+        if (pendingStart != null) {
+            deferredNext = next;
+            return;
+        }
+        MusicResourceInfo resourceInfo = next.getMusicResourceInfo();
+        if (resourceInfo == null || resourceInfo.equals(MusicResourceInfo.NONE)) return;
+        ZonedDateTime startAt = ZonedDateTime.now()
+                .plus(Duration.ofMillis(Math.max(0, current.getDurationMillis() - PREFETCH_LEAD_MILLIS)));
+        StreamAudioPlayer.getInstance().prefetchNext(resourceInfo, startAt);
+    }
+
     public void loadResource(MusicDetail musicDetail) {
         if (ClientConfigDefinition.enable.get()) {
             ImageUtils.downloadAsync(musicDetail.getAlbum().getThumbnailPicUrl(200));
@@ -242,6 +300,10 @@ public class MusicService {
             ClientPlayerEvent.CLIENT_PLAYER_QUIT.register(player -> {
                 reset();
             });
+            StreamAudioPlayer.getInstance().getPlaybackStatsListener().add(stats -> {
+                NetworkManager.sendToServer(new PlaybackStatsMessage(stats.musicId(), stats.bytesPerSecond(), stats.underruns(),
+                        stats.prebufferMillis()));
+            });
         }
 
         public static void reset() {
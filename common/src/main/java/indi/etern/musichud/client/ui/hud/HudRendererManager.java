@@ -46,6 +46,8 @@ public class HudRendererManager {
     private volatile HudRenderData hudBaseData;
     private volatile HudRenderData imageDisplayData;
     private volatile HudRenderData progressDisplayData;
+    private long lastPlayedSeconds = -1;
+    private long lastMusicSeconds = -1;
     @Setter
     private volatile Layout baseLayout;
     @Setter
@@ -277,6 +279,7 @@ public class HudRendererManager {
         LYRICS_RENDERER.setText("");
         SUB_LYRICS_RENDERER.setText("");
         PLAY_TIME_RENDERER.setText("");
+        lastPlayedSeconds = -1;
         PLAYER_HEAD_RENDERER.setPlayerInfo(null);
         var nextData = new TransitionNextData(null, null, 1f);
         TransitionStatus<TransitionNextData> transitionStatus = HudRenderData.getTransitionStatus();
@@ -298,14 +301,18 @@ public class HudRendererManager {
         HudRenderData.getTransitionStatus().updateTransition();
         progressBar.setProgress(nowPlayingInfo.getProgressRate());
 
-        Duration playedDuration = nowPlayingInfo.getPlayedDuration();
+        long playedSeconds = nowPlayingInfo.getPlayedMillis() / 1000;
         Duration musicDuration = nowPlayingInfo.getMusicDuration();
-        if (playedDuration != null && musicDuration != null && !musicDuration.isZero()) {
+        // 只在显示的秒数变化时重新格式化
+        if (musicDuration != null && !musicDuration.isZero()
+                && (playedSeconds != lastPlayedSeconds || musicDuration.toSeconds() != lastMusicSeconds)) {
+            lastPlayedSeconds = playedSeconds;
+            lastMusicSeconds = musicDuration.toSeconds();
             DateTimeFormatter formatter = musicDuration.toHoursPart() >= 1 ?
                     DateTimeFormatter.ofPattern("HH:mm:ss") :
                     DateTimeFormatter.ofPattern("mm:ss");
             String playTimeString = formatter.format(
-                    java.time.LocalTime.MIDNIGHT.plusSeconds(playedDuration.toSeconds())
+                    java.time.LocalTime.MIDNIGHT.plusSeconds(playedSeconds)
             ) + " / " + formatter.format(
                     java.time.LocalTime.MIDNIGHT.plusSeconds(musicDuration.toSeconds())
             );
@@ -169,6 +169,35 @@ public class ConfigView extends LinearLayout {
 
             view.addView(positionCategory);
 
+            var cacheCategory = PreferencesFragment.createCategoryList(view, "缓存");
+            new PreferencesFragment.BooleanOption(context,
+                    "缓存已播放的音乐",
+                    ClientConfigDefinition.audioCacheEnabled,
+                    ClientConfigDefinition.audioCacheEnabled::set)
+                    .create(cacheCategory);
+            new PreferencesFragment.IntegerOption(
+                    context,
+                    "缓存大小上限 (MB)",
+                    ClientConfigDefinition.audioCacheSizeMb,
+                    ClientConfigDefinition.audioCacheSizeMb::set)
+                    .setRange(64, 16384)
+                    .setDefaultValue(1024)
+                    .create(cacheCategory);
+            view.addView(cacheCategory);
+
+            var audioCategory = PreferencesFragment.createCategoryList(view, "音频");
+            new PreferencesFragment.BooleanOption(context,
+                    "混合为单声道",
+                    ClientConfigDefinition.downmixToMono,
+                    ClientConfigDefinition.downmixToMono::set)
+                    .create(audioCategory);
+            new PreferencesFragment.BooleanOption(context,
+                    "高采样率音频重采样到设备采样率",
+                    ClientConfigDefinition.resampleHiResAudio,
+                    ClientConfigDefinition.resampleHiResAudio::set)
+                    .create(audioCategory);
+            view.addView(audioCategory);
+
             addOnAttachStateChangeListener(new OnAttachStateChangeListener() {
                 @Override
                 public void onViewAttachedToWindow(View v) {
@@ -3,52 +3,23 @@ package indi.etern.musichud.network;
 import io.netty.buffer.ByteBuf;
 import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.Utf8String;
+import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.codec.StreamCodec;
 import org.jetbrains.annotations.NotNull;
 
-import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
 
 public class Codecs {
-    public static final StreamCodec<ByteBuf, ZonedDateTime> ZONED_DATE_TIME =
-            new StreamCodec<>() {
-                @Override
-                @NotNull
-                public ZonedDateTime decode(ByteBuf byteBuf) {
-                    int year = byteBuf.readInt();
-                    int month = byteBuf.readInt();
-                    int dayOfMonth = byteBuf.readInt();
-                    int hour = byteBuf.readInt();
-                    int minute = byteBuf.readInt();
-                    int second = byteBuf.readInt();
-                    int zoneIdLength = byteBuf.readInt();
-                    return ZonedDateTime.of(
-                            year,
-                            month,
-                            dayOfMonth,
-                            hour,
-                            minute,
-                            second,
-                            0,
-                            ZoneId.of(byteBuf.readCharSequence(zoneIdLength, StandardCharsets.UTF_8).toString())
-                    );
-                }
-
-                @Override
-                public void encode(ByteBuf byteBuf, ZonedDateTime zonedDateTime) {
-                    byteBuf.writeInt(zonedDateTime.getYear());
-                    byteBuf.writeInt(zonedDateTime.getMonthValue());
-                    byteBuf.writeInt(zonedDateTime.getDayOfMonth());
-                    byteBuf.writeInt(zonedDateTime.getHour());
-                    byteBuf.writeInt(zonedDateTime.getMinute());
-                    byteBuf.writeInt(zonedDateTime.getSecond());
-                    String zoneId = zonedDateTime.getZone().getId();
-                    byteBuf.writeInt(zoneId.length());
-                    byteBuf.writeCharSequence(zoneId, StandardCharsets.UTF_8);
-                }
-            };
+    /**
+     * 以 epoch 毫秒变长整数传输，保留毫秒精度；解码为本地时区，换算到本地时钟见 ClockSyncService
+     */
+    public static final StreamCodec<ByteBuf, ZonedDateTime> ZONED_DATE_TIME = ByteBufCodecs.VAR_LONG.map(
+            epochMillis -> ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()),
+            zonedDateTime -> zonedDateTime.toInstant().toEpochMilli()
+    );
 
     public static final StreamCodec<? super RegistryFriendlyByteBuf, UUID> UUID = new StreamCodec<>() {
         @Override
@@ -0,0 +1,42 @@
+package indi.etern.musichud.network.pushMessages.c2s;
+
+import indi.etern.musichud.interfaces.CommonRegister;
+import indi.etern.musichud.interfaces.RegisterMark;
+import indi.etern.musichud.network.C2SPayload;
+import indi.etern.musichud.network.NetworkRegisterUtil;
+import indi.etern.musichud.server.api.AdaptiveQualityService;
+import indi.etern.musichud.utils.ServerDataPacketVThreadExecutor;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+
+/**
+ * 客户端上报的下载吞吐量（字节/秒）、自上次上报以来的欠载次数和冷启动预缓冲耗时（未测得时为 -1）
+ */
+public record PlaybackStatsMessage(long musicId, long bytesPerSecond, int underruns,
+                                   long prebufferMillis) implements C2SPayload {
+    public static final StreamCodec<RegistryFriendlyByteBuf, PlaybackStatsMessage> CODEC = StreamCodec.composite(
+            ByteBufCodecs.LONG,
+            PlaybackStatsMessage::musicId,
+            ByteBufCodecs.VAR_LONG,
+            PlaybackStatsMessage::bytesPerSecond,
+            ByteBufCodecs.VAR_INT,
+            PlaybackStatsMessage::underruns,
+            ByteBufCodecs.VAR_LONG,
+            PlaybackStatsMessage::prebufferMillis,
+            PlaybackStatsMessage::new
+    );
+
+    @RegisterMark
+    public static class RegisterImpl implements CommonRegister {
+        public void register() {
+            NetworkRegisterUtil.autoRegisterPayload(
+                    PlaybackStatsMessage.class, CODEC,
+                    ServerDataPacketVThreadExecutor.execute((message, player) -> {
+                        AdaptiveQualityService.getInstance().report(player, message.bytesPerSecond, message.underruns,
+                                message.prebufferMillis);
+                    })
+            );
+        }
+    }
+}
@@ -2,16 +2,24 @@ package indi.etern.musichud.network.pushMessages.s2c;
 
 import indi.etern.musichud.MusicHud;
 import indi.etern.musichud.beans.music.MusicDetail;
+import indi.etern.musichud.client.services.ClockSyncService;
 import indi.etern.musichud.client.services.MusicService;
 import indi.etern.musichud.interfaces.CommonRegister;
 import indi.etern.musichud.interfaces.RegisterMark;
+import indi.etern.musichud.network.Codecs;
 import indi.etern.musichud.network.NetworkRegisterUtil;
 import indi.etern.musichud.network.S2CPayload;
 import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.codec.StreamCodec;
 
-public record SwitchMusicMessage(MusicDetail musicDetail, MusicDetail next, String message) implements S2CPayload {
+import java.time.ZonedDateTime;
+
+/**
+ * @param startTime 服务器安排的开始时刻，所有客户端在这一刻同时开始播放
+ */
+public record SwitchMusicMessage(MusicDetail musicDetail, MusicDetail next, String message,
+                                 ZonedDateTime startTime) implements S2CPayload {
     public static final StreamCodec<RegistryFriendlyByteBuf, SwitchMusicMessage> CODEC = StreamCodec.composite(
             MusicDetail.CODEC,
             SwitchMusicMessage::musicDetail,
@@ -19,6 +27,8 @@ public record SwitchMusicMessage(MusicDetail musicDetail, MusicDetail next, Stri
             SwitchMusicMessage::next,
             ByteBufCodecs.STRING_UTF8,
             SwitchMusicMessage::message,
+            Codecs.ZONED_DATE_TIME,
+            SwitchMusicMessage::startTime,
             SwitchMusicMessage::new
     );
 
@@ -30,9 +40,13 @@ public record SwitchMusicMessage(MusicDetail musicDetail, MusicDetail next, Stri
                     (message, context) -> {
                         MusicHud.EXECUTOR.execute(() -> {
                             MusicService musicService = MusicService.getInstance();
-                            musicService.switchMusic(message.musicDetail, message.musicDetail().getMusicResourceInfo(), null, message.message);
+                            ZonedDateTime startTime = ClockSyncService.getInstance().toLocalTime(message.startTime);
+                            musicService.switchMusic(message.musicDetail, message.musicDetail().getMusicResourceInfo(), startTime, message.message);
                             if (!message.next.equals(MusicDetail.NONE)) {
                                 musicService.loadResource(message.next);
+                                if (!message.musicDetail.equals(MusicDetail.NONE)) {
+                                    musicService.prefetchNext(message.musicDetail, message.next);
+                                }
                             }
                         });
                     }
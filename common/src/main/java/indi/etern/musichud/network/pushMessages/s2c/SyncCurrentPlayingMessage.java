@@ -2,6 +2,7 @@ package indi.etern.musichud.network.pushMessages.s2c;
 
 import indi.etern.musichud.MusicHud;
 import indi.etern.musichud.beans.music.MusicDetail;
+import indi.etern.musichud.client.services.ClockSyncService;
 import indi.etern.musichud.client.services.MusicService;
 import indi.etern.musichud.interfaces.CommonRegister;
 import indi.etern.musichud.interfaces.RegisterMark;
@@ -21,6 +22,7 @@ public record SyncCurrentPlayingMessage(MusicDetail currentPlaying, ZonedDateTim
             SyncCurrentPlayingMessage::startTime,
             SyncCurrentPlayingMessage::new
     );
+    private static final long CLOCK_SYNC_TIMEOUT_MILLIS = 1000;
 
     @RegisterMark
     public static class RegisterImpl implements CommonRegister {
@@ -29,8 +31,15 @@ public record SyncCurrentPlayingMessage(MusicDetail currentPlaying, ZonedDateTim
             NetworkRegisterUtil.autoRegisterPayload(SyncCurrentPlayingMessage.class, CODEC,
                     (message, context) -> {
                         MusicHud.EXECUTOR.execute(() -> {
+                            ClockSyncService clockSyncService = ClockSyncService.getInstance();
+                            try {
+                                // 中途加入时连接后马上就会收到这条消息，先等第一次对时
+                                clockSyncService.awaitSynced(CLOCK_SYNC_TIMEOUT_MILLIS);
+                            } catch (InterruptedException ignored) {
+                            }
                             MusicService musicService = MusicService.getInstance();
-                            musicService.switchMusic(message.currentPlaying, message.currentPlaying.getMusicResourceInfo(), message.startTime, "");
+                            musicService.switchMusic(message.currentPlaying, message.currentPlaying.getMusicResourceInfo(),
+                                    clockSyncService.toLocalTime(message.startTime), "");
                         });
                     }
             );
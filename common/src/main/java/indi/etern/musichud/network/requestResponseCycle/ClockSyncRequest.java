@@ -0,0 +1,39 @@
+package indi.etern.musichud.network.requestResponseCycle;
+
+import dev.architectury.networking.NetworkManager;
+import indi.etern.musichud.interfaces.CommonRegister;
+import indi.etern.musichud.interfaces.RegisterMark;
+import indi.etern.musichud.network.C2SPayload;
+import indi.etern.musichud.network.NetworkRegisterUtil;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.server.level.ServerPlayer;
+
+/**
+ * 对时请求，clientSendNanos 为客户端发送时的单调时钟读数，服务器原样带回
+ */
+public record ClockSyncRequest(long clientSendNanos) implements C2SPayload {
+    public static final StreamCodec<RegistryFriendlyByteBuf, ClockSyncRequest> CODEC = StreamCodec.composite(
+            ByteBufCodecs.VAR_LONG,
+            ClockSyncRequest::clientSendNanos,
+            ClockSyncRequest::new
+    );
+
+    @RegisterMark
+    public static class RegisterImpl implements CommonRegister {
+        public void register() {
+            NetworkRegisterUtil.autoRegisterPayload(
+                    ClockSyncRequest.class, CODEC,
+                    (request, context) -> {
+                        // 直接在收包线程上应答，不经过线程池，减少服务器处理时间带来的误差
+                        long receiveMillis = System.currentTimeMillis();
+                        if (context.getPlayer() instanceof ServerPlayer serverPlayer) {
+                            NetworkManager.sendToPlayer(serverPlayer, new ClockSyncResponse(
+                                    request.clientSendNanos, receiveMillis, System.currentTimeMillis()));
+                        }
+                    }
+            );
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package indi.etern.musichud.network.requestResponseCycle;
+
+import indi.etern.musichud.client.services.ClockSyncService;
+import indi.etern.musichud.interfaces.CommonRegister;
+import indi.etern.musichud.interfaces.RegisterMark;
+import indi.etern.musichud.network.NetworkRegisterUtil;
+import indi.etern.musichud.network.S2CPayload;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+
+/**
+ * 对时应答，服务器时间均为 epoch 毫秒
+ */
+public record ClockSyncResponse(long clientSendNanos, long serverReceiveMillis,
+                                long serverSendMillis) implements S2CPayload {
+    public static final StreamCodec<RegistryFriendlyByteBuf, ClockSyncResponse> CODEC = StreamCodec.composite(
+            ByteBufCodecs.VAR_LONG,
+            ClockSyncResponse::clientSendNanos,
+            ByteBufCodecs.VAR_LONG,
+            ClockSyncResponse::serverReceiveMillis,
+            ByteBufCodecs.VAR_LONG,
+            ClockSyncResponse::serverSendMillis,
+            ClockSyncResponse::new
+    );
+
+    @RegisterMark
+    public static class RegisterImpl implements CommonRegister {
+        public void register() {
+            NetworkRegisterUtil.autoRegisterPayload(
+                    ClockSyncResponse.class, CODEC,
+                    (response, context) -> {
+                        long receiveNanos = System.nanoTime();
+                        ClockSyncService.getInstance().onResponse(response, receiveNanos);
+                    }
+            );
+        }
+    }
+}
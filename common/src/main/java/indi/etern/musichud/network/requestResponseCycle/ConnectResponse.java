@@ -2,6 +2,7 @@ package indi.etern.musichud.network.requestResponseCycle;
 
 import indi.etern.musichud.MusicHud;
 import indi.etern.musichud.Version;
+import indi.etern.musichud.client.services.ClockSyncService;
 import indi.etern.musichud.client.services.LoginService;
 import indi.etern.musichud.interfaces.CommonRegister;
 import indi.etern.musichud.interfaces.RegisterMark;
@@ -31,6 +32,9 @@ public record ConnectResponse(boolean accepted, Version serverVersion) implement
                     (payload, context) -> {
                         LOGGER.info("Connecting {}", payload.accepted() ? "accepted" : "denied");
                         MusicHud.setConnected(true);
+                        if (payload.accepted()) {
+                            ClockSyncService.getInstance().start();
+                        }
                         LoginService.getInstance().loginToServer();
                     }
             );
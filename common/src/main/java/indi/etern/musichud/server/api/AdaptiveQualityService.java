@@ -0,0 +1,173 @@
+package indi.etern.musichud.server.api;
+
+import indi.etern.musichud.MusicHud;
+import indi.etern.musichud.beans.music.MusicDetail;
+import indi.etern.musichud.beans.music.MusicResourceInfo;
+import indi.etern.musichud.beans.music.Quality;
+import net.minecraft.server.level.ServerPlayer;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 根据客户端上报的下载吞吐量和欠载次数，为每个客户端选择能持续播放的最高音质，
+ * 类似视频播放器的自适应码率。没有上报过的客户端仍使用无损。
+ * 同时根据预缓冲耗时决定切歌时提前多久通知客户端
+ */
+public class AdaptiveQualityService {
+    private static final Logger logger = MusicHud.getLogger(AdaptiveQualityService.class);
+    // 从低到高的可选音质及其标称码率（bit/s）
+    private static final List<Tier> LADDER = List.of(
+            new Tier(Quality.STANDARD, 128_000),
+            new Tier(Quality.HIGHER, 192_000),
+            new Tier(Quality.EX_HIGH, 320_000),
+            new Tier(Quality.LOSSLESS, 1_000_000)
+    );
+    // 吞吐量至少是码率的多少倍才认为可以持续播放
+    private static final double HEADROOM = 1.5;
+    private static final double SMOOTHING = 0.3;
+    // 没有客户端上报预缓冲耗时时的默认提前量
+    private static final long DEFAULT_START_LEAD_MILLIS = 3000;
+    private static final long MIN_START_LEAD_MILLIS = 1000;
+    private static final long MAX_START_LEAD_MILLIS = 10000;
+    private static volatile AdaptiveQualityService instance;
+    private final MusicApiService musicApiService = MusicApiService.getInstance();
+    private final Map<ServerPlayer, ClientLink> clientLinks = new ConcurrentHashMap<>();
+    // 正在后台解析的 歌曲 id:音质
+    private final Set<String> preparing = ConcurrentHashMap.newKeySet();
+
+    public static AdaptiveQualityService getInstance() {
+        if (instance == null) {
+            synchronized (AdaptiveQualityService.class) {
+                if (instance == null) {
+                    instance = new AdaptiveQualityService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param bytesPerSecond 客户端测得的下载吞吐量，未测得时为 0
+     * @param underruns      自上次上报以来的欠载次数
+     * @param prebufferMillis 冷启动预缓冲耗时，未测得时为 -1
+     */
+    public void report(ServerPlayer player, long bytesPerSecond, int underruns, long prebufferMillis) {
+        ClientLink link = clientLinks.computeIfAbsent(player, p -> new ClientLink());
+        synchronized (link) {
+            if (prebufferMillis >= 0) {
+                link.prebufferMillis = link.prebufferMillis < 0 ? prebufferMillis
+                        : link.prebufferMillis * (1 - SMOOTHING) + prebufferMillis * SMOOTHING;
+            }
+            if (bytesPerSecond > 0) {
+                link.bytesPerSecond = link.bytesPerSecond == 0 ? bytesPerSecond
+                        : link.bytesPerSecond * (1 - SMOOTHING) + bytesPerSecond * SMOOTHING;
+            }
+            int tier = link.tier;
+            if (underruns > 0) {
+                // 出现欠载立即降一档
+                tier = Math.max(0, tier - 1);
+            } else if (link.bytesPerSecond > 0) {
+                int sustainable = 0;
+                for (int i = 0; i < LADDER.size(); i++) {
+                    if (LADDER.get(i).bitrate / 8.0 * HEADROOM <= link.bytesPerSecond) {
+                        sustainable = i;
+                    }
+                }
+                // 升档每次只升一级，降档直接到可持续的档位
+                tier = sustainable > tier ? tier + 1 : sustainable;
+            }
+            if (tier != link.tier) {
+                logger.info("Switching audio quality of player \"{}\" from {} to {} ({} KB/s, {} underruns)",
+                        player.getName().getString(), LADDER.get(link.tier).quality, LADDER.get(tier).quality,
+                        (long) link.bytesPerSecond / 1024, underruns);
+                link.tier = tier;
+            }
+        }
+    }
+
+    public void forget(ServerPlayer player) {
+        clientLinks.remove(player);
+    }
+
+    /**
+     * 让最慢的客户端也能在开始时刻前完成预缓冲
+     */
+    public long getStartLeadMillis(Collection<ServerPlayer> players) {
+        double slowest = -1;
+        for (ServerPlayer player : players) {
+            ClientLink link = clientLinks.get(player);
+            if (link != null) {
+                slowest = Math.max(slowest, link.prebufferMillis);
+            }
+        }
+        if (slowest < 0) return DEFAULT_START_LEAD_MILLIS;
+        return Math.clamp((long) (slowest * HEADROOM), MIN_START_LEAD_MILLIS, MAX_START_LEAD_MILLIS);
+    }
+
+    public Quality getQuality(ServerPlayer player) {
+        ClientLink link = clientLinks.get(player);
+        return LADDER.get(link == null ? LADDER.size() - 1 : link.tier).quality;
+    }
+
+    /**
+     * 在后台解析当前各客户端所用的较低音质资源，宣布歌曲时 {@link #adapt} 只需查询缓存
+     */
+    public void prepare(MusicDetail musicDetail) {
+        if (musicDetail == null || musicDetail.equals(MusicDetail.NONE)) return;
+        MusicResourceInfo primary = musicDetail.getMusicResourceInfo();
+        if (primary == null || primary.equals(MusicResourceInfo.NONE)) return;
+        Set<Quality> qualities = EnumSet.noneOf(Quality.class);
+        for (ClientLink link : clientLinks.values()) {
+            Quality quality = LADDER.get(link.tier).quality;
+            if (needsVariant(primary, quality)) {
+                qualities.add(quality);
+            }
+        }
+        for (Quality quality : qualities) {
+            String key = musicDetail.getId() + ":" + quality.getValueName();
+            if (musicApiService.getCachedResourceInfo(musicDetail, quality, primary) != null || !preparing.add(key)) continue;
+            CompletableFuture.runAsync(() -> musicApiService.getResourceInfo(musicDetail, quality, primary), MusicHud.EXECUTOR)
+                    .whenComplete((ignored, e) -> preparing.remove(key));
+        }
+    }
+
+    /**
+     * 返回适合 quality 的 musicDetail，只使用 {@link #prepare} 已解析好的资源；
+     * 原资源码率不高于该音质或尚未解析时返回原对象
+     */
+    public MusicDetail adapt(MusicDetail musicDetail, Quality quality) {
+        if (musicDetail == null || musicDetail.equals(MusicDetail.NONE)) return musicDetail;
+        MusicResourceInfo primary = musicDetail.getMusicResourceInfo();
+        if (primary == null || !needsVariant(primary, quality)) return musicDetail;
+        MusicResourceInfo resourceInfo = musicApiService.getCachedResourceInfo(musicDetail, quality, primary);
+        if (resourceInfo == null) {
+            // 之后的同步消息可以用上
+            prepare(musicDetail);
+            return musicDetail;
+        }
+        return musicDetail.withMusicResourceInfo(resourceInfo);
+    }
+
+    private static boolean needsVariant(MusicResourceInfo primary, Quality quality) {
+        if (quality == Quality.LOSSLESS || primary.equals(MusicResourceInfo.NONE)) return false;
+        int bitrate = LADDER.stream().filter(tier -> tier.quality == quality).findFirst()
+                .map(Tier::bitrate).orElse(Integer.MAX_VALUE);
+        return primary.getBitrate() <= 0 || primary.getBitrate() > bitrate;
+    }
+
+    private record Tier(Quality quality, int bitrate) {
+    }
+
+    private static class ClientLink {
+        double bytesPerSecond = 0;
+        double prebufferMillis = -1;
+        int tier = LADDER.size() - 1;
+    }
+}
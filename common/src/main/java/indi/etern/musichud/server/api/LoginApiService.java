@@ -102,6 +102,7 @@ public class LoginApiService {
             logger.warn("Polling v-thread stopped as player {} quit", player.getName());
         }
         MusicPlayerServerService.getInstance().idlePlaySources.remove(player);
+        AdaptiveQualityService.getInstance().forget(player);
     }
 
     @SneakyThrows
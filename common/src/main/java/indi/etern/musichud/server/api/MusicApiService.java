@@ -12,13 +12,17 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import net.minecraft.server.level.ServerPlayer;
 import org.apache.logging.log4j.Logger;
-import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class MusicApiService {
@@ -31,6 +35,16 @@ public class MusicApiService {
             .expireAfterAccess(10, TimeUnit.MINUTES)
             .maximumSize(400)
             .build();
+    // 按音质解析成功的资源，直链有时效，写入后定时过期；失败不缓存
+    private static final Cache<String, MusicResourceInfo> qualityResourceCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(400)
+            .build();
+    // 整个资源解析（含重试）的期限
+    private static final long RESOLVE_DEADLINE_MILLIS = 20000;
+    private static final int URL_CHECK_TIMEOUT_MILLIS = 5000;
+    // 请求本身的重试由 ApiClient 负责，这里只在直链检查失败时再解析一次
+    private static final int RESOLVE_PASSES = 2;
     private static volatile MusicApiService musicApiService;
     private final LoginApiService loginApiService = LoginApiService.getInstance();
 
@@ -119,54 +133,149 @@ public class MusicApiService {
     public MusicResourceInfo getResourceInfo(MusicDetail musicDetail) {
         if (musicDetail == null || musicDetail.equals(MusicDetail.NONE)) {
             return MusicResourceInfo.NONE;
-        } else {
-            MusicResourceInfo musicResourceInfo;
-            int retryCount = 0;
-            boolean available;
-            do {
-                if (retryCount >= 5) {
-                    logger.error("Failed to load music resource for \"{}\"(id:{}), as resource url is not available", musicDetail.getName(), musicDetail.getId());
-                    return MusicResourceInfo.NONE;
-                }
-                var request = new GetDirectResourceUrlRequest(musicDetail.getId(), false, Quality.LOSSLESS);
-                var response = ApiClient.post(ServerApiMeta.Music.URL, request, loginApiService.randomVipCookieOr(null));
-                if (response.code == 200) {
-                    musicResourceInfo = response.data.getFirst();
-                    // 30 seconds trial or have no copyright
-                    if (musicResourceInfo.getTime() <= 30040 || musicResourceInfo.getUrl() == null) {
-                        musicResourceInfo = getMusicResourceInfoFromMatcher(musicDetail);
-                    }
-                    completeLyricInfo(musicDetail, musicResourceInfo);
-                } else {
-                    logger.warn("Failed to get resource for music: {} (ID: {}), trying substitute", musicDetail.getName(), musicDetail.getId());
-                    try {
-                        musicResourceInfo = getMusicResourceInfoFromMatcher(musicDetail);
-                        completeLyricInfo(musicDetail, musicResourceInfo);
-                    } catch (Exception e) {
-                        logger.error("Failed to get resource for music from substitute: {} (ID: {})", musicDetail.getName(), musicDetail.getId());
-                        musicResourceInfo = MusicResourceInfo.NONE;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RESOLVE_DEADLINE_MILLIS);
+        // 歌词与直链无关，和直链解析同时进行
+        CompletableFuture<LyricInfo> lyricFuture = getLyricInfoAsync(musicDetail);
+        try {
+            for (int pass = 0; pass < RESOLVE_PASSES && System.nanoTime() < deadline; pass++) {
+                MusicResourceInfo musicResourceInfo = awaitUntil(resolveAvailableUrl(musicDetail), deadline, MusicResourceInfo.NONE);
+                if (!musicResourceInfo.equals(MusicResourceInfo.NONE)) {
+                    LyricInfo lyricInfo = awaitUntil(lyricFuture, deadline, null);
+                    if (lyricInfo != null) {
+                        musicResourceInfo.setLyricInfo(lyricInfo);
                     }
+                    return musicResourceInfo;
                 }
-                available = ApiClient.checkUrlAvailable(musicResourceInfo.getUrl(), 10000);
-                retryCount++;
-            } while (!available);
-            return musicResourceInfo;
+            }
+            logger.error("Failed to load music resource for \"{}\"(id:{}), as resource url is not available", musicDetail.getName(), musicDetail.getId());
+            return MusicResourceInfo.NONE;
+        } finally {
+            lyricFuture.cancel(true);
         }
     }
 
-    private void completeLyricInfo(MusicDetail musicDetail, MusicResourceInfo musicResourceInfo) {
+    /**
+     * 解析一个可用的直链：灰色歌曲（无版权）的直链多半是试听片段，同时请求替代源，取先得到的可用结果；
+     * 其他歌曲在直链不可用时才请求替代源
+     *
+     * @return 两者都不可用时得到 NONE
+     */
+    private CompletableFuture<MusicResourceInfo> resolveAvailableUrl(MusicDetail musicDetail) {
+        PrivilegeInfo privilege = musicDetail.getPrivilege();
+        boolean grey = privilege != null && (privilege.getCopyrightStatus() < 0 || privilege.isDisabledAsCopyrightProtect());
+        CompletableFuture<MusicResourceInfo> direct = requestDirectUrl(musicDetail, !grey);
+        if (!grey) return direct;
+        return firstAvailable(direct, requestMatchedUrl(musicDetail));
+    }
+
+    private CompletableFuture<MusicResourceInfo> requestDirectUrl(MusicDetail musicDetail, boolean fallbackToMatcher) {
+        var request = new GetDirectResourceUrlRequest(musicDetail.getId(), false, Quality.LOSSLESS);
+        return ApiClient.postAsync(ServerApiMeta.Music.URL, request, loginApiService.randomVipCookieOr(null))
+                .thenCompose(response -> {
+                    if (response.code == 200 && !response.data.isEmpty()) {
+                        MusicResourceInfo musicResourceInfo = response.data.getFirst();
+                        // 30 seconds trial or have no copyright
+                        if (musicResourceInfo.getTime() > 30040 && musicResourceInfo.getUrl() != null) {
+                            return checkAvailableAsync(musicResourceInfo);
+                        }
+                    } else {
+                        logger.warn("Failed to get resource for music: {} (ID: {}), trying substitute", musicDetail.getName(), musicDetail.getId());
+                    }
+                    return fallbackToMatcher ? requestMatchedUrl(musicDetail) : CompletableFuture.completedFuture(MusicResourceInfo.NONE);
+                })
+                .exceptionally(e -> {
+                    logger.warn("Failed to get resource for music: {} (ID: {}): {}", musicDetail.getName(), musicDetail.getId(), e.getMessage());
+                    return MusicResourceInfo.NONE;
+                });
+    }
+
+    private CompletableFuture<MusicResourceInfo> requestMatchedUrl(MusicDetail musicDetail) {
+        var unblockRequest = new GetMatchResourceUrlRequest(musicDetail.getId(), null);
+        return ApiClient.postAsync(ServerApiMeta.Music.UNBLOCK, unblockRequest, loginApiService.randomVipCookieOr(null))
+                .thenCompose(unblockResponse -> checkAvailableAsync(MusicResourceInfo.from(unblockResponse.data, musicDetail)))
+                .exceptionally(e -> {
+                    logger.error("Failed to get resource for music from substitute: {} (ID: {})", musicDetail.getName(), musicDetail.getId());
+                    return MusicResourceInfo.NONE;
+                });
+    }
+
+    private static CompletableFuture<MusicResourceInfo> checkAvailableAsync(MusicResourceInfo musicResourceInfo) {
+        return CompletableFuture.supplyAsync(() ->
+                ApiClient.checkUrlAvailable(musicResourceInfo.getUrl(), URL_CHECK_TIMEOUT_MILLIS)
+                        ? musicResourceInfo : MusicResourceInfo.NONE, MusicHud.EXECUTOR);
+    }
+
+    /**
+     * @return 先得到的可用结果，都不可用时为 NONE
+     */
+    private static CompletableFuture<MusicResourceInfo> firstAvailable(CompletableFuture<MusicResourceInfo> first,
+                                                                       CompletableFuture<MusicResourceInfo> second) {
+        CompletableFuture<MusicResourceInfo> result = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(2);
+        BiConsumer<MusicResourceInfo, Throwable> onComplete = (musicResourceInfo, e) -> {
+            if (musicResourceInfo != null && !musicResourceInfo.equals(MusicResourceInfo.NONE)) {
+                result.complete(musicResourceInfo);
+            } else if (remaining.decrementAndGet() == 0) {
+                result.complete(MusicResourceInfo.NONE);
+            }
+        };
+        first.whenComplete(onComplete);
+        second.whenComplete(onComplete);
+        return result;
+    }
+
+    /**
+     * 等待 future 直到 deadline（System.nanoTime），超时或失败时返回 fallback
+     */
+    private static <T> T awaitUntil(CompletableFuture<T> future, long deadline, T fallback) {
         try {
-            LyricInfo lyricInfo = getLyricInfo(musicDetail);
-            musicResourceInfo.setLyricInfo(lyricInfo);
-        } catch (Exception e) {
-            logger.warn("Failed to get lyric for music: {} (ID: {})", musicDetail.getName(), musicDetail.getId(), e);
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (ExecutionException | TimeoutException e) {
+            return fallback;
         }
     }
 
-    private @NotNull MusicResourceInfo getMusicResourceInfoFromMatcher(MusicDetail musicDetail) {
-        var unblockRequest = new GetMatchResourceUrlRequest(musicDetail.getId(), null);
-        var unblockResponse = ApiClient.post(ServerApiMeta.Music.UNBLOCK, unblockRequest, loginApiService.randomVipCookieOr(null));
-        return MusicResourceInfo.from(unblockResponse.data, musicDetail);
+    /**
+     * 解析指定音质的资源，不使用替代源，歌词沿用 primary 中已获取的。
+     * 只缓存成功的结果，一次失败不会让歌曲在缓存期内一直使用原音质
+     *
+     * @return 该音质不可用时返回 null
+     */
+    public MusicResourceInfo getResourceInfo(MusicDetail musicDetail, Quality quality, MusicResourceInfo primary) {
+        String key = musicDetail.getId() + ":" + quality.getValueName();
+        MusicResourceInfo cached = qualityResourceCache.getIfPresent(key);
+        if (cached == null) {
+            try {
+                var request = new GetDirectResourceUrlRequest(musicDetail.getId(), false, quality);
+                var response = ApiClient.post(ServerApiMeta.Music.URL, request, loginApiService.randomVipCookieOr(null));
+                if (response.code == 200 && !response.data.isEmpty()) {
+                    MusicResourceInfo resourceInfo = response.data.getFirst();
+                    if (resourceInfo.getTime() > 30040
+                            && resourceInfo.getUrl() != null && !resourceInfo.getUrl().isEmpty()
+                            && ApiClient.checkUrlAvailable(resourceInfo.getUrl(), URL_CHECK_TIMEOUT_MILLIS)) {
+                        cached = resourceInfo;
+                        qualityResourceCache.put(key, cached);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to get {} resource for music: {} (ID: {})", quality, musicDetail.getName(), musicDetail.getId());
+            }
+        }
+        return cached == null ? null : cached.withLyricInfo(primary.getLyricInfo());
+    }
+
+    /**
+     * 只查询缓存的 {@link #getResourceInfo(MusicDetail, Quality, MusicResourceInfo)}，不发出请求
+     *
+     * @return 尚未解析或不可用时返回 null
+     */
+    public MusicResourceInfo getCachedResourceInfo(MusicDetail musicDetail, Quality quality, MusicResourceInfo primary) {
+        MusicResourceInfo cached = qualityResourceCache.getIfPresent(musicDetail.getId() + ":" + quality.getValueName());
+        return cached == null ? null : cached.withLyricInfo(primary.getLyricInfo());
     }
 
     public List<Playlist> getPlayersUserPlaylists(ServerPlayer player) {
@@ -184,6 +293,17 @@ public class MusicApiService {
         }
     }
 
+    private CompletableFuture<LyricInfo> getLyricInfoAsync(MusicDetail musicDetail) {
+        return ApiClient.postAsync(ServerApiMeta.Music.WORD_BY_WORD_LYRIC, new IdRequest(musicDetail.getId()), loginApiService.randomVipCookieOr(loginApiService::getAnonymousCookie))
+                .thenApply(response -> {
+                    if (response.getCode() == 200) {
+                        return response;
+                    }
+                    logger.warn("Failed to get lyric for music: {} (ID: {}), response code: {}", musicDetail.getName(), musicDetail.getId(), response.getCode());
+                    return null;
+                });
+    }
+
     public LyricInfo getLyricInfo(MusicDetail musicDetail) {
         var response = ApiClient.post(ServerApiMeta.Music.WORD_BY_WORD_LYRIC, new IdRequest(musicDetail.getId()), loginApiService.randomVipCookieOr(loginApiService::getAnonymousCookie));
         if (response.getCode() == 200) {
@@ -6,6 +6,7 @@ import indi.etern.musichud.beans.music.MusicDetail;
 import indi.etern.musichud.beans.music.MusicResourceInfo;
 import indi.etern.musichud.beans.music.Playlist;
 import indi.etern.musichud.beans.music.PusherInfo;
+import indi.etern.musichud.beans.music.Quality;
 import indi.etern.musichud.interfaces.RegisterMark;
 import indi.etern.musichud.interfaces.ServerRegister;
 import indi.etern.musichud.network.pushMessages.s2c.RefreshMusicQueueMessage;
@@ -21,217 +22,374 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import org.apache.logging.log4j.Logger;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MusicPlayerServerService {
     private static volatile MusicPlayerServerService instance;
     private final MusicApiService musicApiService = MusicApiService.getInstance();
     private final CurrentVoteInfo currentVoteInfo = new CurrentVoteInfo();
+    private final QueueResolver queueResolver = new QueueResolver();
     @Getter
     ArrayDeque<MusicDetail> musicQueue = new ArrayDeque<>();
     Map<ServerPlayer, Set<Playlist>> idlePlaySources = new ConcurrentHashMap<>();
     boolean continuable;
     private Logger logger = MusicHud.getLogger(MusicPlayerServerService.class);
+    // 提前多久解析下一首的资源
+    private static final Duration PRERESOLVE_AHEAD = Duration.ofSeconds(30);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+    private static final int MAX_RESOLVE_ATTEMPTS = 3;
+    private static final int MAX_IDLE_PICKS = 8;
     private int musicIntervalMillis = 1000;
     @Getter
     private volatile MusicDetail currentMusicDetail = MusicDetail.NONE;
     @Getter
     private volatile ZonedDateTime nowPlayingStartTime = ZonedDateTime.of(LocalDateTime.MIN, ZoneId.systemDefault());
-    private Thread pusherThread;
     private boolean haveSentMusic = false;
-    private final Runnable musicPusher = new Runnable() {
-        private MusicDetail preloadMusicDetail = MusicDetail.NONE;
+    // 时间轴状态由 this 保护
+    private final TrackTimeline timeline = new TrackTimeline(this);
+    private boolean running = false;
+    // 已宣布、将在 announcedStartTime 开始的下一首；null 表示尚未宣布，NONE 表示本首之后停止
+    private volatile MusicDetail announcedMusicDetail;
+    private volatile ZonedDateTime announcedStartTime;
+    // 已取出、正在解析资源等待宣布的下一首
+    private MusicDetail pendingMusicDetail;
+    // 正在后台解析资源的歌曲，按对象区分
+    private final Map<MusicDetail, CompletableFuture<Void>> resolving = new IdentityHashMap<>();
+    private ZonedDateTime preresolveTime;
+    // 空闲歌单中随机选出、将要播放的下一首
+    private MusicDetail preloadMusicDetail = MusicDetail.NONE;
 
-        @Override
-        public void run() {
-            Thread thread = Thread.currentThread();
-            thread.setName("Music Data Pusher");
-            pusherThread = thread;
-            String message = "";
-            while (MusicPlayerServerService.this.continuable) {
-                MusicDetail switchedToPlay = null;
-                MusicDetail nextMusicDetail;
-                try {
-                    Map<ServerPlayer, LoginApiService.PlayerLoginInfo> loginedPlayerInfoMap = LoginApiService.getInstance().loginedPlayerInfoMap;
-                    if (musicQueue.isEmpty()) {
-                        Optional<MusicDetail> optionalMusicDetail = getRandomMusicFromIdleSources();
-                        if (optionalMusicDetail.isEmpty()) {
-                            break;
-                        } else {
-                            MusicDetail musicDetail = optionalMusicDetail.get();
-                            if (preloadMusicDetail == null || preloadMusicDetail.equals(MusicDetail.NONE)) {
-                                preloadMusicDetail = musicDetail;
-                                Optional<MusicDetail> optionalMusicDetail1 = getRandomMusicFromIdleSources();
-                                if (optionalMusicDetail1.isPresent()) {
-                                    switchedToPlay = preloadMusicDetail;
-                                    nextMusicDetail = optionalMusicDetail1.get();
-                                    preloadMusicDetail = nextMusicDetail;
-                                } else {
-                                    switchedToPlay = musicDetail;
-                                    preloadMusicDetail = MusicDetail.NONE;
-                                }
-                            } else {
-                                switchedToPlay = preloadMusicDetail;
-                                preloadMusicDetail = musicDetail;
-                            }
-                            PusherInfo pusherInfo = switchedToPlay.getPusherInfo();
-                            if (pusherInfo != null &&
-                                    loginedPlayerInfoMap.keySet().stream().noneMatch(
-                                            serverPlayer -> serverPlayer.getUUID().equals(pusherInfo.playerUUID())
-                                    )
-                            ) {
-                                continue;
-                            }
-                        }
-                    } else {
-                        switchedToPlay = musicQueue.remove();
-                        NetworkManager.sendToPlayers(loginedPlayerInfoMap.keySet(),
-                                new RefreshMusicQueueMessage(musicQueue));
-                    }
-
-                    if (!musicQueue.isEmpty()) {
-                        nextMusicDetail = musicQueue.getFirst();
-                    } else {
-                        nextMusicDetail = preloadMusicDetail != null ? preloadMusicDetail : MusicDetail.NONE;
-                    }
+    public MusicPlayerServerService() {
+        updateContinuable(!LoginApiService.getInstance().getLoginStateChangeListeners().isEmpty());
+    }
 
-                    loadResourceInfoIfUnloaded(switchedToPlay);
-                    NetworkManager.sendToPlayers(
-                            loginedPlayerInfoMap.keySet(),
-                            new SwitchMusicMessage(switchedToPlay, nextMusicDetail, message)
-                    );
-                    message = "";
-                    currentVoteInfo.resetTo(switchedToPlay);
-                    haveSentMusic = true;
-                    currentMusicDetail = switchedToPlay;
-                    nowPlayingStartTime = ZonedDateTime.now();
-                    logger.info("Switched to music: {} (ID: {})", switchedToPlay.getName(), switchedToPlay.getId());
-                    try {
-                        //noinspection BusyWait
-                        Thread.sleep(switchedToPlay.getDurationMillis() + musicIntervalMillis);
-                    } catch (InterruptedException ignored) {//When force switch
-                        logger.info("Skip current, switch to next");
-                        message = "投票切歌通过";
-                    }
-                } catch (Exception e) {
-                    logger.error("Failed to push music: {} (id: {})",
-                            switchedToPlay != null ? switchedToPlay.getName() : "null",
-                            switchedToPlay != null ? switchedToPlay.getId() : "-1",
-                            e);
-                    try {
-                        //noinspection BusyWait
-                        Thread.sleep(1000);
-                    } catch (InterruptedException ignored) {
-                        break;
-                    }
+    public static MusicPlayerServerService getInstance() {
+        if (instance == null) {
+            synchronized (MusicPlayerServerService.class) {
+                if (instance == null) {
+                    instance = new MusicPlayerServerService();
                 }
             }
-            pusherThread = null;
-            if (haveSentMusic) {
-                MusicPlayerServerService.this.stopSendingMusic();
-            }
         }
+        return instance;
+    }
 
-        private Optional<MusicDetail> getRandomMusicFromIdleSources() {
-            if (idlePlaySources.isEmpty()) {
-                return Optional.empty();
-            }
+    private void updateContinuable(boolean continuable) {
+        this.continuable = continuable;
+        if (continuable) {
+            MusicHud.EXECUTOR.execute(this::startTimeline);
+        } else {
+            MusicHud.EXECUTOR.execute(this::stopTimelineIfDiscontinued);
+        }
+    }
 
-            List<Map.Entry<ServerPlayer, Set<Playlist>>> entryList =
-                    new ArrayList<>(idlePlaySources.entrySet());
+    private synchronized void startTimeline() {
+        if (running || !continuable) return;
+        running = true;
+        haveSentMusic = false;
+        announce(ZonedDateTime.now().plus(Duration.ofMillis(getStartLeadMillis())), "");
+    }
 
-            if (entryList.isEmpty()) {
-                return Optional.empty();
-            }
+    private synchronized void stopTimeline() {
+        timeline.cancelAll();
+        running = false;
+        announcedMusicDetail = null;
+        pendingMusicDetail = null;
+        preresolveTime = null;
+        if (haveSentMusic) {
+            stopSendingMusic();
+        }
+    }
+
+    private synchronized void stopTimelineIfDiscontinued() {
+        if (running && !continuable) {
+            stopTimeline();
+        }
+    }
 
-            Map.Entry<ServerPlayer, Set<Playlist>> randomEntry =
-                    entryList.get(MusicHud.RANDOM.nextInt(entryList.size()));
+    private long getStartLeadMillis() {
+        return AdaptiveQualityService.getInstance().getStartLeadMillis(LoginApiService.getInstance().loginedPlayerInfoMap.keySet());
+    }
 
-            ServerPlayer sourcePlayer = randomEntry.getKey();
-            Set<Playlist> playlists = randomEntry.getValue();
+    /**
+     * 为结束于 end 的当前歌曲安排后续事件：提前解析下一首的资源，提前一个起播提前量宣布下一首
+     */
+    private void scheduleUntil(ZonedDateTime end) {
+        preresolveTime = end.minus(PRERESOLVE_AHEAD);
+        timeline.schedule(preresolveTime, this::preresolve);
+        timeline.schedule(end.minus(Duration.ofMillis(getStartLeadMillis())), () -> announce(end, ""));
+    }
 
-            List<MusicDetail> allTracks = playlists.stream()
-                    .flatMap(playlist -> playlist.getTracks().stream())
-                    .toList();
+    /**
+     * 在后台解析下一首的资源，宣布时不再需要等待网络请求
+     */
+    private void preresolve() {
+        MusicDetail next = peekNextTrack();
+        resolveAsync(next).exceptionally(e -> {
+            logger.warn("Failed to preresolve resource info of next music: {} (id: {})", next.getName(), next.getId());
+            return null;
+        });
+    }
 
-            if (allTracks.isEmpty()) {
-                return Optional.empty();
+    /**
+     * 在锁外解析资源；同一首歌正在解析时复用同一个 future，预解析和宣布不会重复请求
+     */
+    private synchronized CompletableFuture<Void> resolveAsync(MusicDetail musicDetail) {
+        CompletableFuture<Void> future = resolving.get(musicDetail);
+        if (future != null) return future;
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        resolving.put(musicDetail, created);
+        MusicHud.EXECUTOR.execute(() -> {
+            Exception failure = null;
+            try {
+                loadResourceInfoIfUnloaded(musicDetail);
+            } catch (Exception e) {
+                failure = e;
             }
-
-            MusicDetail randomTrack = allTracks.get(MusicHud.RANDOM.nextInt(allTracks.size()));
-
-            LoginApiService.PlayerLoginInfo loginInfo =
-                    LoginApiService.getInstance().getLoginInfoByServerPlayer(sourcePlayer);
-            if (loginInfo != null) {
-                PusherInfo pusherInfo = new PusherInfo(
-                        loginInfo.profile.getUserId(),
-                        sourcePlayer.getUUID(),
-                        sourcePlayer.getName().getString()
-                );
-                randomTrack.setPusherInfo(pusherInfo);
+            synchronized (this) {
+                resolving.remove(musicDetail);
+            }
+            if (failure == null) {
+                created.complete(null);
             } else {
-                randomTrack.setPusherInfo(PusherInfo.EMPTY);
+                created.completeExceptionally(failure);
             }
-            return Optional.of(randomTrack);
-        }
-    };
+        });
+        return created;
+    }
 
-    public MusicPlayerServerService() {
-        updateContinuable(!LoginApiService.getInstance().getLoginStateChangeListeners().isEmpty());
+    private synchronized void announce(ZonedDateTime startTime, String message) {
+        announce(startTime, message, 0, false);
     }
 
-    public static MusicPlayerServerService getInstance() {
-        if (instance == null) {
-            synchronized (MusicPlayerServerService.class) {
-                if (instance == null) {
-                    instance = new MusicPlayerServerService();
+    /**
+     * 选出下一首，资源在锁外解析完成后发送给客户端，客户端在当前歌曲继续播放的同时预缓冲，于 startTime 同时开始
+     */
+    private synchronized void announce(ZonedDateTime startTime, String message, int attempt, boolean resolveFailed) {
+        MusicDetail announced = announcedMusicDetail;
+        MusicDetail next;
+        if (announced != null && !announced.equals(MusicDetail.NONE)) {
+            next = announced;
+        } else if (pendingMusicDetail != null) {
+            // 上次宣布在解析途中被取消，沿用已取出的歌曲
+            next = pendingMusicDetail;
+        } else if (continuable && attempt < MAX_RESOLVE_ATTEMPTS) {
+            next = takeNextTrack();
+        } else {
+            next = MusicDetail.NONE;
+        }
+        if (next.equals(MusicDetail.NONE)) {
+            if (resolveFailed) {
+                // 连续解析失败，稍后重试，不影响当前歌曲播放
+                timeline.schedule(ZonedDateTime.now().plus(RETRY_DELAY),
+                        () -> announce(ZonedDateTime.now().plus(Duration.ofMillis(getStartLeadMillis())), message));
+                return;
+            }
+            // 没有可播放的歌曲，当前歌曲结束时停止
+            announcedStartTime = startTime;
+            announcedMusicDetail = MusicDetail.NONE;
+            timeline.schedule(startTime, this::switchTrack);
+            return;
+        }
+        pendingMusicDetail = next;
+        // 让客户端可以在本首结束前预取下一首，不等待它解析完成
+        MusicDetail following = peekNextTrack();
+        resolveAsync(following).exceptionally(e -> {
+            logger.warn("Failed to preload resource info of next music: {} (id: {})",
+                    following.getName(), following.getId());
+            return null;
+        });
+        Executor continuation = timeline.continuation();
+        resolveAsync(next).whenCompleteAsync((ignored, e) -> {
+            pendingMusicDetail = null;
+            if (e != null) {
+                logger.error("Failed to push music: {} (id: {})", next.getName(), next.getId(), e);
+                if (announcedMusicDetail == next) {
+                    announcedMusicDetail = null;
                 }
+                announce(startTime, message, attempt + 1, true);
+                return;
             }
+            ZonedDateTime earliestStart = ZonedDateTime.now().plus(Duration.ofMillis(getStartLeadMillis()));
+            // 解析用掉了提前量时推迟开始时刻，而不是让所有客户端迟到
+            ZonedDateTime adjustedStartTime = startTime.isBefore(earliestStart) ? earliestStart : startTime;
+            announcedStartTime = adjustedStartTime;
+            announcedMusicDetail = next;
+            sendSwitchMusic(LoginApiService.getInstance().loginedPlayerInfoMap.keySet(), next, following, message, adjustedStartTime);
+            haveSentMusic = true;
+            timeline.schedule(adjustedStartTime, this::switchTrack);
+        }, continuation);
+    }
+
+    private synchronized void switchTrack() {
+        MusicDetail started = announcedMusicDetail;
+        announcedMusicDetail = null;
+        if (started == null || started.equals(MusicDetail.NONE)) {
+            stopTimeline();
+            return;
         }
-        return instance;
+        currentVoteInfo.resetTo(started);
+        currentMusicDetail = started;
+        nowPlayingStartTime = announcedStartTime;
+        logger.info("Switched to music: {} (ID: {})", started.getName(), started.getId());
+        scheduleUntil(announcedStartTime.plus(Duration.ofMillis(started.getDurationMillis() + musicIntervalMillis)));
     }
 
-    private void updateContinuable(boolean continuable) {
-        this.continuable = continuable;
-        if (continuable) {
-            startMusicPusher();
+    private synchronized void skipCurrent() {
+        if (!running) return;
+        logger.info("Skip current, switch to next");
+        timeline.cancelAll();
+        announce(ZonedDateTime.now().plus(Duration.ofMillis(getStartLeadMillis())), "投票切歌通过");
+    }
+
+    /**
+     * 队列变化后重新安排：原本没有下一首时重新宣布，已过预解析时刻时解析新的队首
+     */
+    private synchronized void onQueueChanged() {
+        if (!running) return;
+        MusicDetail announced = announcedMusicDetail;
+        if (announced != null && announced.equals(MusicDetail.NONE)) {
+            timeline.cancelAll();
+            announcedMusicDetail = null;
+            announce(announcedStartTime, "");
+        } else if (announced == null && preresolveTime != null && !ZonedDateTime.now().isBefore(preresolveTime)) {
+            preresolve();
         }
     }
 
-    private void startMusicPusher() {
-        synchronized (MusicPlayerServerService.class) {
-            haveSentMusic = false;
-            if (pusherThread == null) {
-                MusicHud.EXECUTOR.execute(musicPusher);
+    /**
+     * 取出下一首：优先点歌队列，否则从空闲歌单随机选择，跳过推送者已离线的歌曲
+     */
+    private MusicDetail takeNextTrack() {
+        Set<ServerPlayer> players = LoginApiService.getInstance().loginedPlayerInfoMap.keySet();
+        if (!musicQueue.isEmpty()) {
+            MusicDetail next = musicQueue.remove();
+            // 已在入队后解析并保持新鲜，取出后交给 loadResourceInfoIfUnloaded 最后检查
+            queueResolver.untrack(next);
+            NetworkManager.sendToPlayers(players, new RefreshMusicQueueMessage(musicQueue));
+            return next;
+        }
+        for (int attempt = 0; attempt < MAX_IDLE_PICKS; attempt++) {
+            MusicDetail candidate = preloadMusicDetail != null && !preloadMusicDetail.equals(MusicDetail.NONE)
+                    ? preloadMusicDetail : getRandomMusicFromIdleSources().orElse(MusicDetail.NONE);
+            preloadMusicDetail = MusicDetail.NONE;
+            if (candidate.equals(MusicDetail.NONE)) break;
+            PusherInfo pusherInfo = candidate.getPusherInfo();
+            if (pusherInfo != null &&
+                    players.stream().noneMatch(serverPlayer -> serverPlayer.getUUID().equals(pusherInfo.playerUUID()))) {
+                continue;
             }
+            return candidate;
+        }
+        return MusicDetail.NONE;
+    }
+
+    /**
+     * 下一首将要播放的歌曲，不取出；从空闲歌单随机选出的歌曲会保留到 {@link #takeNextTrack()}
+     */
+    private MusicDetail peekNextTrack() {
+        if (!musicQueue.isEmpty()) {
+            return musicQueue.getFirst();
+        }
+        if (preloadMusicDetail == null || preloadMusicDetail.equals(MusicDetail.NONE)) {
+            preloadMusicDetail = getRandomMusicFromIdleSources().orElse(MusicDetail.NONE);
+        }
+        return preloadMusicDetail;
+    }
+
+    private Optional<MusicDetail> getRandomMusicFromIdleSources() {
+        if (idlePlaySources.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<Map.Entry<ServerPlayer, Set<Playlist>>> entryList =
+                new ArrayList<>(idlePlaySources.entrySet());
+
+        if (entryList.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Map.Entry<ServerPlayer, Set<Playlist>> randomEntry =
+                entryList.get(MusicHud.RANDOM.nextInt(entryList.size()));
+
+        ServerPlayer sourcePlayer = randomEntry.getKey();
+        Set<Playlist> playlists = randomEntry.getValue();
+
+        List<MusicDetail> allTracks = playlists.stream()
+                .flatMap(playlist -> playlist.getTracks().stream())
+                .toList();
+
+        if (allTracks.isEmpty()) {
+            return Optional.empty();
+        }
+
+        MusicDetail randomTrack = allTracks.get(MusicHud.RANDOM.nextInt(allTracks.size()));
+
+        LoginApiService.PlayerLoginInfo loginInfo =
+                LoginApiService.getInstance().getLoginInfoByServerPlayer(sourcePlayer);
+        if (loginInfo != null) {
+            PusherInfo pusherInfo = new PusherInfo(
+                    loginInfo.profile.getUserId(),
+                    sourcePlayer.getUUID(),
+                    sourcePlayer.getName().getString()
+            );
+            randomTrack.setPusherInfo(pusherInfo);
+        } else {
+            randomTrack.setPusherInfo(PusherInfo.EMPTY);
         }
+        return Optional.of(randomTrack);
     }
 
     private void loadResourceInfoIfUnloaded(MusicDetail musicDetail) {
         if (musicDetail != null && !musicDetail.equals(MusicDetail.NONE)) {
             MusicResourceInfo musicResourceInfo = musicDetail.getMusicResourceInfo();
-            if (musicResourceInfo == null || musicResourceInfo.equals(MusicResourceInfo.NONE)) {
+            // 直链即将过期时也重新解析
+            if (musicResourceInfo == null || musicResourceInfo.equals(MusicResourceInfo.NONE)
+                    || !queueResolver.isFresh(musicDetail)) {
                 MusicResourceInfo resourceInfo = musicApiService.getResourceInfo(musicDetail);
                 if (resourceInfo != null && !resourceInfo.equals(MusicResourceInfo.NONE)) {
+                    queueResolver.recordResolved(resourceInfo);
                     musicDetail.setMusicResourceInfo(resourceInfo);
                 } else {
                     throw new RuntimeException("Failed to get resource info for music: " + musicDetail.getName() + " (ID: " + musicDetail.getId() + ")");
                 }
             }
+            AdaptiveQualityService.getInstance().prepare(musicDetail);
         }
     }
 
+    /**
+     * 按各客户端可持续的音质分组发送，同一音质的客户端共用一条消息
+     */
+    private void sendSwitchMusic(Set<ServerPlayer> players, MusicDetail musicDetail, MusicDetail next, String message,
+                                 ZonedDateTime startTime) {
+        AdaptiveQualityService adaptiveQualityService = AdaptiveQualityService.getInstance();
+        Map<Quality, List<ServerPlayer>> playersByQuality = new EnumMap<>(Quality.class);
+        for (ServerPlayer player : players) {
+            playersByQuality.computeIfAbsent(adaptiveQualityService.getQuality(player), q -> new ArrayList<>()).add(player);
+        }
+        playersByQuality.forEach((quality, group) -> NetworkManager.sendToPlayers(group, new SwitchMusicMessage(
+                adaptiveQualityService.adapt(musicDetail, quality),
+                adaptiveQualityService.adapt(next, quality),
+                message,
+                startTime
+        )));
+    }
+
     private void stopSendingMusic() {
         this.continuable = false;
         currentMusicDetail = MusicDetail.NONE;
         NetworkManager.sendToPlayers(
                 LoginApiService.getInstance().loginedPlayerInfoMap.keySet(),
-                new SwitchMusicMessage(MusicDetail.NONE, MusicDetail.NONE, "")
+                new SwitchMusicMessage(MusicDetail.NONE, MusicDetail.NONE, "", ZonedDateTime.now())
         );
         currentVoteInfo.resetTo(MusicDetail.NONE);
     }
@@ -240,8 +398,16 @@ public class MusicPlayerServerService {
         NetworkManager.sendToPlayer(serverPlayer,
                 new RefreshMusicQueueMessage(musicQueue));
         if (currentMusicDetail != MusicDetail.NONE) {
+            AdaptiveQualityService adaptiveQualityService = AdaptiveQualityService.getInstance();
+            MusicDetail musicDetail = adaptiveQualityService.adapt(currentMusicDetail, adaptiveQualityService.getQuality(serverPlayer));
             NetworkManager.sendToPlayer(serverPlayer,
-                    new SyncCurrentPlayingMessage(currentMusicDetail, nowPlayingStartTime));
+                    new SyncCurrentPlayingMessage(musicDetail, nowPlayingStartTime));
+        }
+        MusicDetail announced = announcedMusicDetail;
+        ZonedDateTime announcedStart = announcedStartTime;
+        if (announced != null && !announced.equals(MusicDetail.NONE) && announcedStart != null) {
+            // 下一首已宣布但还没开始，中途加入的玩家也要按时切换
+            sendSwitchMusic(Set.of(serverPlayer), announced, MusicDetail.NONE, "", announcedStart);
         }
     }
 
@@ -261,9 +427,11 @@ public class MusicPlayerServerService {
             musicDetail.setPusherInfo(pusherInfo);
         }
         musicQueue.add(musicDetail);
+        queueResolver.track(musicDetail);
         NetworkManager.sendToPlayers(LoginApiService.getInstance().loginedPlayerInfoMap.keySet(),
                 new RefreshMusicQueueMessage(musicQueue));
         updateContinuable(true);
+        MusicHud.EXECUTOR.execute(this::onQueueChanged);
     }
 
     public void removeMusicDetailFromQueue(int index, long id, ServerPlayer serverPlayer) {
@@ -306,8 +474,10 @@ public class MusicPlayerServerService {
         if (musicDetail.getPusherInfo().playerUUID().equals(player.getUUID())) {
             AtomicInteger index1 = new AtomicInteger(0);
             musicQueue.removeIf(musicDetail1 -> index == index1.getAndIncrement() && musicDetail.equals(musicDetail1));
+            queueResolver.untrack(musicDetail);
             NetworkManager.sendToPlayers(LoginApiService.getInstance().loginedPlayerInfoMap.keySet(),
                     new RefreshMusicQueueMessage(musicQueue));
+            MusicHud.EXECUTOR.execute(this::onQueueChanged);
         } else {
             throw new IllegalAccessException();
         }
@@ -316,8 +486,10 @@ public class MusicPlayerServerService {
     private void trySimplyRemove(MusicDetail musicDetail, ServerPlayer serverPlayer) {
         if (musicDetail.getPusherInfo().playerUUID().equals(serverPlayer.getUUID())) {
             musicQueue.remove(musicDetail);
+            queueResolver.untrack(musicDetail);
             NetworkManager.sendToPlayers(LoginApiService.getInstance().loginedPlayerInfoMap.keySet(),
                     new RefreshMusicQueueMessage(musicQueue));
+            MusicHud.EXECUTOR.execute(this::onQueueChanged);
         }
     }
 
@@ -371,9 +543,7 @@ public class MusicPlayerServerService {
                 voteRate = Math.clamp(voteRate, 0.0f, 1.0f);
                 if (voteRate >= 0.5) {
                     logger.info("Try to skip current music as voting rate reach: {} >= 0.5", voteRate);
-                    if (pusherThread != null) {
-                        pusherThread.interrupt();
-                    }
+                    MusicHud.EXECUTOR.execute(MusicPlayerServerService.this::skipCurrent);
                     resetTo(MusicDetail.NONE);
                 }
             }
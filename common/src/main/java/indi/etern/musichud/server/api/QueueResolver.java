@@ -0,0 +1,161 @@
+package indi.etern.musichud.server.api;
+
+import indi.etern.musichud.MusicHud;
+import indi.etern.musichud.beans.music.MusicDetail;
+import indi.etern.musichud.beans.music.MusicResourceInfo;
+import io.netty.util.Timeout;
+import org.apache.logging.log4j.Logger;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 点歌队列中的歌曲一入队就在后台解析资源和歌词，并在直链过期前重新解析，
+ * 轮到播放时不需要再等待网络请求
+ */
+class QueueResolver {
+    private static final Logger LOGGER = MusicHud.getLogger(QueueResolver.class);
+    // 网易云直链路径的第一段是北京时间的过期时刻，如 /20240101123456/...
+    private static final Pattern EXPIRY_PATTERN = Pattern.compile("^/(\\d{14})/");
+    private static final DateTimeFormatter EXPIRY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final ZoneId EXPIRY_ZONE = ZoneId.of("Asia/Shanghai");
+    // 无法从直链得知时效时按接口默认的 20 分钟估计
+    private static final Duration DEFAULT_LIFETIME = Duration.ofMinutes(20);
+    // 过期前多久重新解析，也是开始播放时要求的最少剩余时效
+    private static final Duration REFRESH_MARGIN = Duration.ofMinutes(3);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final MusicApiService musicApiService = MusicApiService.getInstance();
+    // 按对象区分，同一首歌可以在队列中出现多次
+    private final Map<MusicDetail, Entry> entries = new IdentityHashMap<>();
+    // 解析时刻，用于无法从直链得知时效的资源
+    private final Map<MusicResourceInfo, Instant> resolvedTimes = new WeakHashMap<>();
+
+    /**
+     * 开始后台解析并保持新鲜，直到 {@link #untrack} 或取出播放
+     */
+    synchronized void track(MusicDetail musicDetail) {
+        if (musicDetail == null || musicDetail.equals(MusicDetail.NONE) || entries.containsKey(musicDetail)) return;
+        Entry entry = new Entry(musicDetail);
+        entries.put(musicDetail, entry);
+        if (isFresh(musicDetail)) {
+            scheduleRefresh(entry, expiryOf(musicDetail.getMusicResourceInfo()));
+        } else {
+            resolveAsync(entry);
+        }
+    }
+
+    synchronized void untrack(MusicDetail musicDetail) {
+        Entry entry = entries.remove(musicDetail);
+        if (entry != null && entry.refresh != null) {
+            entry.refresh.cancel();
+        }
+    }
+
+    /**
+     * @return 资源已解析且直链在 {@link #REFRESH_MARGIN} 之后才过期
+     */
+    synchronized boolean isFresh(MusicDetail musicDetail) {
+        MusicResourceInfo resourceInfo = musicDetail.getMusicResourceInfo();
+        if (resourceInfo == null || resourceInfo.equals(MusicResourceInfo.NONE)) return false;
+        Instant expiry = expiryOf(resourceInfo);
+        return expiry == null || expiry.isAfter(Instant.now().plus(REFRESH_MARGIN));
+    }
+
+    /**
+     * 在队列之外同步解析后调用，记录解析时刻以便估计时效
+     */
+    synchronized void recordResolved(MusicResourceInfo resourceInfo) {
+        resolvedTimes.put(resourceInfo, Instant.now());
+    }
+
+    /**
+     * @return 直链的过期时刻，无法得知且不是由这里解析的资源返回 null
+     */
+    private Instant expiryOf(MusicResourceInfo resourceInfo) {
+        Instant parsed = parseExpiry(resourceInfo.getUrl());
+        if (parsed != null) return parsed;
+        Instant resolvedTime = resolvedTimes.get(resourceInfo);
+        return resolvedTime == null ? null : resolvedTime.plus(DEFAULT_LIFETIME);
+    }
+
+    static Instant parseExpiry(String url) {
+        try {
+            String path = URI.create(url).getRawPath();
+            if (path == null) return null;
+            Matcher matcher = EXPIRY_PATTERN.matcher(path);
+            if (!matcher.find()) return null;
+            return LocalDateTime.parse(matcher.group(1), EXPIRY_FORMAT).atZone(EXPIRY_ZONE).toInstant();
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void resolveAsync(Entry entry) {
+        if (entry.resolving) return;
+        entry.resolving = true;
+        MusicHud.EXECUTOR.execute(() -> {
+            MusicDetail musicDetail = entry.musicDetail;
+            MusicResourceInfo resourceInfo;
+            try {
+                // 同时获取歌词和可用性检查
+                resourceInfo = musicApiService.getResourceInfo(musicDetail);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to resolve queued music: {} (id: {})", musicDetail.getName(), musicDetail.getId(), e);
+                resourceInfo = MusicResourceInfo.NONE;
+            }
+            synchronized (this) {
+                entry.resolving = false;
+                if (entries.get(musicDetail) != entry) return;
+                if (resourceInfo.equals(MusicResourceInfo.NONE)) {
+                    scheduleRefresh(entry, Instant.now().plus(RETRY_DELAY).plus(REFRESH_MARGIN));
+                    return;
+                }
+                resolvedTimes.remove(musicDetail.getMusicResourceInfo());
+                resolvedTimes.put(resourceInfo, Instant.now());
+                musicDetail.setMusicResourceInfo(resourceInfo);
+                AdaptiveQualityService.getInstance().prepare(musicDetail);
+                Instant expiry = expiryOf(resourceInfo);
+                LOGGER.debug("Resolved queued music {} (id: {}), url expires at {}", musicDetail.getName(), musicDetail.getId(), expiry);
+                scheduleRefresh(entry, expiry);
+            }
+        });
+    }
+
+    private void scheduleRefresh(Entry entry, Instant expiry) {
+        if (entry.refresh != null) {
+            entry.refresh.cancel();
+            entry.refresh = null;
+        }
+        if (expiry == null) return;
+        long delayMillis = Math.max(0, Duration.between(Instant.now(), expiry.minus(REFRESH_MARGIN)).toMillis());
+        entry.refresh = TrackTimeline.TIMER.newTimeout(timeout -> {
+            synchronized (this) {
+                if (entries.get(entry.musicDetail) == entry) {
+                    resolveAsync(entry);
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Entry {
+        final MusicDetail musicDetail;
+        Timeout refresh;
+        boolean resolving = false;
+
+        Entry(MusicDetail musicDetail) {
+            this.musicDetail = musicDetail;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package indi.etern.musichud.server.api;
+
+import indi.etern.musichud.MusicHud;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 播放时间轴上的定时事件。到期检查由 netty 的时间轮完成，事件本身在虚拟线程上持有 lock 执行；
+ * {@link #cancelAll()} 之后已经到期但还没执行的事件也会被丢弃
+ */
+final class TrackTimeline {
+    // 时间轮精度，事件本身都是秒级的
+    private static final long TICK_MILLIS = 50;
+    static final Timer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("Music Timeline", true), TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+    private final Object lock;
+    private final List<Timeout> pending = new ArrayList<>();
+    private long generation = 0;
+
+    TrackTimeline(Object lock) {
+        this.lock = lock;
+    }
+
+    /**
+     * 在 at 时刻执行 event，at 已经过去时立即执行
+     */
+    synchronized void schedule(ZonedDateTime at, Runnable event) {
+        long scheduledGeneration = generation;
+        long delayMillis = Math.max(0, Duration.between(ZonedDateTime.now(), at).toMillis());
+        pending.removeIf(Timeout::isExpired);
+        pending.add(TIMER.newTimeout(timeout -> MusicHud.EXECUTOR.execute(() -> {
+            synchronized (lock) {
+                if (isCurrent(scheduledGeneration)) {
+                    event.run();
+                }
+            }
+        }), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 用于在锁外完成的工作（如网络请求）之后继续：提交的任务持有 lock 执行，
+     * 创建之后调用过 {@link #cancelAll()} 时丢弃
+     */
+    synchronized Executor continuation() {
+        long scheduledGeneration = generation;
+        return task -> MusicHud.EXECUTOR.execute(() -> {
+            synchronized (lock) {
+                if (isCurrent(scheduledGeneration)) {
+                    task.run();
+                }
+            }
+        });
+    }
+
+    synchronized void cancelAll() {
+        generation++;
+        pending.forEach(Timeout::cancel);
+        pending.clear();
+    }
+
+    private synchronized boolean isCurrent(long scheduledGeneration) {
+        return generation == scheduledGeneration;
+    }
+}
@@ -11,7 +11,8 @@ public class RegistrationManager {
     private static final String[] CLIENT_REGISTRIES = new String[]{
             "indi.etern.musichud.client.config.Keybinds",
             "indi.etern.musichud.client.services.LoginService$RegisterImpl",
-            "indi.etern.musichud.client.services.MusicService$RegisterImpl"
+            "indi.etern.musichud.client.services.MusicService$RegisterImpl",
+            "indi.etern.musichud.client.services.ClockSyncService$RegisterImpl"
     };
 
     private static final String[] SERVER_REGISTRIES = new String[]{
@@ -33,6 +34,8 @@ public class RegistrationManager {
             "indi.etern.musichud.network.requestResponseCycle.CancelQRLoginRequest$RegisterImpl",
             "indi.etern.musichud.network.requestResponseCycle.AnonymousLoginRequest$RegisterImpl",
             "indi.etern.musichud.network.requestResponseCycle.CookieLoginRequest$RegisterImpl",
+            "indi.etern.musichud.network.requestResponseCycle.ClockSyncRequest$RegisterImpl",
+            "indi.etern.musichud.network.requestResponseCycle.ClockSyncResponse$RegisterImpl",
             "indi.etern.musichud.network.pushMessages.s2c.RefreshMusicQueueMessage$RegisterImpl",
             "indi.etern.musichud.network.pushMessages.s2c.SwitchMusicMessage$RegisterImpl",
             "indi.etern.musichud.network.pushMessages.s2c.LoginResultMessage$RegisterImpl",
@@ -42,7 +45,8 @@ public class RegistrationManager {
             "indi.etern.musichud.network.pushMessages.c2s.ClientPushMusicToQueueMessage$RegisterImpl",
             "indi.etern.musichud.network.pushMessages.c2s.ClientRemoveMusicFromQueueMessage$RegisterImpl",
             "indi.etern.musichud.network.pushMessages.c2s.LogoutMessage$RegisterImpl",
-            "indi.etern.musichud.network.pushMessages.c2s.VoteSkipCurrentMusicMessage$RegisterImpl"
+            "indi.etern.musichud.network.pushMessages.c2s.VoteSkipCurrentMusicMessage$RegisterImpl",
+            "indi.etern.musichud.network.pushMessages.c2s.PlaybackStatsMessage$RegisterImpl"
     };
 
     private static final Set<Class<?>> registeredSet = new HashSet<>();
@@ -1,6 +1,5 @@
 package indi.etern.musichud.utils.http;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import indi.etern.musichud.MusicHud;
@@ -9,7 +8,11 @@ import indi.etern.musichud.server.api.ServerApiMeta;
 import indi.etern.musichud.throwable.ApiException;
 import indi.etern.musichud.utils.JsonUtil;
 import lombok.SneakyThrows;
+import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.URI;
@@ -20,11 +23,23 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class ApiClient {
     public static final HttpClient CLIENT;
+    private static final Logger logger = MusicHud.getLogger(ApiClient.class);
     private static final int maxTrial = 5;
+    // 第 n 次重试前等待 [d/2, d]，d = min(上限, 基数 * 2^(n-1))
+    private static final long BACKOFF_BASE_MILLIS = 250;
+    private static final long BACKOFF_MAX_MILLIS = 4000;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
 
     static {
         CLIENT = HttpClient.newBuilder()
@@ -34,113 +49,147 @@ public class ApiClient {
                 .build();
     }
 
-    @SneakyThrows
     public static <T> T post(ServerApiMeta.UrlMeta<T> urlMeta, Object requestBody, String formattedUserCookie) {
-        T t = null;
-        int trial = 0;
-        do {
-            try {
-                trial++;
-                if (trial != 1) {
-                    //noinspection BusyWait
-                    Thread.sleep(500);
+        return await(postAsync(urlMeta, requestBody, formattedUserCookie));
+    }
+
+    public static <T> T get(ServerApiMeta.UrlMeta<T> urlMeta, String formattedUserCookie) {
+        return await(getAsync(urlMeta, formattedUserCookie));
+    }
+
+    public static <T> CompletableFuture<T> postAsync(ServerApiMeta.UrlMeta<T> urlMeta, Object requestBody, String formattedUserCookie) {
+        JsonNode payload = null;
+        if (requestBody != null) {
+            payload = requestBody instanceof JsonNode element ? element : JsonUtil.objectMapper.valueToTree(requestBody);
+            if (payload instanceof ObjectNode objectNode) {
+                if (formattedUserCookie == null || formattedUserCookie.isEmpty()) {
+                    objectNode.put("noCookie", true);
                 }
-                HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                        .uri(urlMeta.toURI())
-                        .setHeader("Content-Type", "application/json");
-                if (requestBody != null) {
-                    JsonNode payload = requestBody instanceof JsonNode element ? element : JsonUtil.objectMapper.valueToTree(requestBody);
-                    if (payload instanceof ObjectNode objectNode) {
-                        if (formattedUserCookie != null && !formattedUserCookie.isEmpty()) {
-                            for (String cookieItem : formattedUserCookie.split(";;")) {
-                                requestBuilder.header("Cookie", cookieItem);
-                            }
+            } else {
+                return CompletableFuture.failedFuture(new IllegalStateException());
+            }
+        }
+        String payloadString = payload == null ? null : payload.toString();
+        // 每次重试重新构建请求，noCache 的时间戳随之更新
+        return sendAsync(urlMeta, () -> {
+            HttpRequest.Builder requestBuilder = newRequestBuilder(urlMeta, formattedUserCookie)
+                    .setHeader("Content-Type", "application/json");
+            if (payloadString != null) {
+                requestBuilder.POST(HttpRequest.BodyPublishers.ofString(payloadString, StandardCharsets.UTF_8));
+            } else {
+                requestBuilder.POST(HttpRequest.BodyPublishers.noBody());
+            }
+            return requestBuilder.build();
+        });
+    }
+
+    public static <T> CompletableFuture<T> getAsync(ServerApiMeta.UrlMeta<T> urlMeta, String formattedUserCookie) {
+        return sendAsync(urlMeta, () -> newRequestBuilder(urlMeta, formattedUserCookie).GET().build());
+    }
+
+    private static HttpRequest.Builder newRequestBuilder(ServerApiMeta.UrlMeta<?> urlMeta, String formattedUserCookie) {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(urlMeta.toURI())
+                .timeout(REQUEST_TIMEOUT);
+        if (formattedUserCookie != null && !formattedUserCookie.isEmpty()) {
+            for (String cookieItem : formattedUserCookie.split(";;")) {
+                requestBuilder.header("Cookie", cookieItem);
+            }
+        }
+        return requestBuilder;
+    }
+
+    private static <T> CompletableFuture<T> sendAsync(ServerApiMeta.UrlMeta<T> urlMeta, Supplier<HttpRequest> requestSupplier) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(urlMeta, requestSupplier, 1, result);
+        return result.thenApply(t -> {
+            if (t instanceof PostProcessable postProcessable) {
+                postProcessable.postProcess();
+            }
+            return t;
+        });
+    }
+
+    private static <T> void attempt(ServerApiMeta.UrlMeta<T> urlMeta, Supplier<HttpRequest> requestSupplier,
+                                    int trial, CompletableFuture<T> result) {
+        HttpRequest request;
+        try {
+            request = requestSupplier.get();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(urlMeta.url(), CircuitBreaker::new);
+        if (!circuitBreaker.tryAcquire()) {
+            // 接口正在熔断，不等待也不重试
+            result.completeExceptionally(new ApiException());
+            return;
+        }
+        boolean lastTrial = trial >= maxTrial || !urlMeta.autoRetry();
+        CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                // 响应头到达后在虚拟线程上边接收边解析
+                .thenApplyAsync(ApiClient::readBody, MusicHud.EXECUTOR)
+                .whenComplete((response, throwable) -> {
+                    Throwable cause = throwable;
+                    while ((cause instanceof CompletionException || cause instanceof UncheckedIOException)
+                            && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    if (cause != null) {
+                        circuitBreaker.onFailure();
+                        if (cause instanceof ConnectException connectException) {
+                            logger.error("请检查 API 服务器状态");
+                            result.completeExceptionally(new ApiException(connectException));
+                        } else if (cause instanceof IOException && !lastTrial) {
+                            retry(urlMeta, requestSupplier, trial, result);
                         } else {
-                            objectNode.put("noCookie", true);
+                            result.completeExceptionally(cause);
                         }
-                        requestBuilder.POST(HttpRequest.BodyPublishers.ofString(
-                                        payload.toString(),
-                                        StandardCharsets.UTF_8
-                                )
-                        );
+                        return;
+                    }
+                    if (response.status() >= 500) {
+                        circuitBreaker.onFailure();
                     } else {
-                        throw new IllegalStateException();
+                        circuitBreaker.onSuccess();
                     }
-                } else {
-                    if (formattedUserCookie != null && !formattedUserCookie.isEmpty()) {
-                        for (String cookieItem : formattedUserCookie.split(";;")) {
-                            requestBuilder.header("Cookie", cookieItem);
+                    if (response.body().path("code").asInt() == 200 || lastTrial) {
+                        try {
+                            result.complete(JsonUtil.objectMapper.treeToValue(response.body(), urlMeta.responseType()));
+                        } catch (Exception e) {
+                            result.completeExceptionally(e);
                         }
+                    } else {
+                        retry(urlMeta, requestSupplier, trial, result);
                     }
-                    requestBuilder.POST(HttpRequest.BodyPublishers.noBody());
-                }
-                HttpRequest request = requestBuilder
-                        .build();
-                try {
-                    HttpResponse<?> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-                    String string = response.body().toString();
-                    var codeOnlyResponse = JsonUtil.objectMapper.readValue(string, CodeOnlyResponse.class);
-                    if (codeOnlyResponse.code == 200 || trial == maxTrial || !urlMeta.autoRetry()) {
-                        t = JsonUtil.objectMapper.readValue(string, urlMeta.responseType());
-                    }
-                } catch (ConnectException e) {
-                    MusicHud.getLogger(ApiClient.class).error("请检查 API 服务器状态");
-                    throw e;
-                }
-            } catch (ConnectException e) {
-                throw new ApiException(e);
-            }
-        } while (t == null && trial < maxTrial && urlMeta.autoRetry());
-        if (t instanceof PostProcessable postProcessable) {
-            postProcessable.postProcess();
+                });
+    }
+
+    private static <T> void retry(ServerApiMeta.UrlMeta<T> urlMeta, Supplier<HttpRequest> requestSupplier,
+                                  int trial, CompletableFuture<T> result) {
+        long ceiling = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << (trial - 1));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, MusicHud.EXECUTOR)
+                .execute(() -> attempt(urlMeta, requestSupplier, trial + 1, result));
+    }
+
+    private static ParsedResponse readBody(HttpResponse<InputStream> response) {
+        try (InputStream body = response.body()) {
+            return new ParsedResponse(response.statusCode(), JsonUtil.objectMapper.readTree(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return t;
     }
 
     @SneakyThrows
-    public static <T> T get(ServerApiMeta.UrlMeta<T> urlMeta, String formattedUserCookie) {
-        T t = null;
-        int trial = 0;
-        do {
-            try {
-                trial++;
-                if (trial != 1) {
-                    //noinspection BusyWait
-                    Thread.sleep(500);
-                }
-                HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                        .uri(urlMeta.toURI());
-                if (formattedUserCookie != null && !formattedUserCookie.isEmpty()) {
-                    for (String cookieItem : formattedUserCookie.split(";;")) {
-                        requestBuilder.header("Cookie", cookieItem);
-                    }
-                }
-                HttpRequest request = requestBuilder
-                        .GET()
-                        .build();
-                try {
-                    HttpResponse<?> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-                    String string = response.body().toString();
-                    var codeOnlyResponse = JsonUtil.objectMapper.readValue(string, CodeOnlyResponse.class);
-                    if (codeOnlyResponse.code == 200 || trial == maxTrial || !urlMeta.autoRetry()) {
-                        t = JsonUtil.objectMapper.readValue(string, urlMeta.responseType());
-                    }
-                } catch (ConnectException e) {
-                    MusicHud.getLogger(ApiClient.class).error("请检查 API 服务器状态");
-                    throw e;
-                }
-            } catch (ConnectException e) {
-                throw new ApiException(e);
-            }
-        } while (t == null && trial < maxTrial && urlMeta.autoRetry());
-        if (t instanceof PostProcessable postProcessable) {
-            postProcessable.postProcess();
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() != null ? e.getCause() : e;
         }
-        return t;
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    private record CodeOnlyResponse(int code) {
+    private record ParsedResponse(int status, JsonNode body) {
     }
 
     public static boolean checkUrlAvailable(String urlString, int timeoutMillis) {
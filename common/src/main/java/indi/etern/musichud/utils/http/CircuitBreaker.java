@@ -0,0 +1,69 @@
+package indi.etern.musichud.utils.http;
+
+import indi.etern.musichud.MusicHud;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个接口的熔断器：连续失败达到阈值后在一段时间内直接拒绝请求，到期后只放行一个探测请求，
+ * 探测成功才恢复，失败则以更长的时间再次熔断
+ */
+class CircuitBreaker {
+    private static final Logger logger = MusicHud.getLogger(CircuitBreaker.class);
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long BASE_OPEN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_OPEN_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final String endpoint;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    // 恢复前的连续熔断次数，决定下一次熔断的时长
+    private int trips = 0;
+    private long openUntil = 0;
+
+    CircuitBreaker(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @return 是否允许发出请求，允许时调用方必须随后调用 {@link #onSuccess()} 或 {@link #onFailure()}
+     */
+    synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (System.nanoTime() - openUntil < 0) yield false;
+                state = State.HALF_OPEN;
+                yield true;
+            }
+            // 探测请求尚未返回
+            case HALF_OPEN -> false;
+        };
+    }
+
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("API endpoint {} recovered", endpoint);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trips = 0;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            long openNanos = Math.min(MAX_OPEN_NANOS, BASE_OPEN_NANOS << Math.min(trips, 4));
+            trips++;
+            state = State.OPEN;
+            openUntil = System.nanoTime() + openNanos;
+            logger.warn("API endpoint {} failed {} times in a row, rejecting requests for {} s",
+                    endpoint, consecutiveFailures, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+        }
+    }
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
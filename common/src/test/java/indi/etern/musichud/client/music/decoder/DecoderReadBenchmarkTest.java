@@ -0,0 +1,104 @@
+package indi.etern.musichud.client.music.decoder;
+
+import indi.etern.musichud.MusicHud;
+import lombok.SneakyThrows;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * 对比 readChunk（每次分配 byte[]）和 readInto（复用直接缓冲区）两条解码路径，FLAC 和 MP3 各一组
+ */
+public class DecoderReadBenchmarkTest {
+    private static final Logger LOGGER = MusicHud.getLogger(DecoderReadBenchmarkTest.class);
+    @SneakyThrows
+    private static MP3StreamDecoder newMp3Decoder(byte[] mp3) {
+        return new MP3StreamDecoder(new BufferedInputStream(new ByteArrayInputStream(mp3)), null);
+    }
+
+    /**
+     * MPEG-1 Layer III、128kbps、44.1kHz 立体声的静音帧：侧信息全为零，主数据没有任何系数。
+     * 没有可用的编码器生成真实内容，但 jlayer 仍对每帧完整执行反量化、IMDCT 和合成滤波
+     */
+    private static byte[] silentMp3(int frameCount) {
+        int frameLength = 144 * 128_000 / 44100;
+        byte[] mp3 = new byte[frameLength * frameCount];
+        for (int frame = 0; frame < frameCount; frame++) {
+            int offset = frame * frameLength;
+            mp3[offset] = (byte) 0xFF;
+            mp3[offset + 1] = (byte) 0xFB;
+            mp3[offset + 2] = (byte) 0x90;
+            mp3[offset + 3] = 0x00;
+        }
+        return mp3;
+    }
+
+    private static long decodeWithReadChunk(AudioDecoder decoder, CRC32 checksum) {
+        long total = 0;
+        byte[] chunk;
+        while ((chunk = decoder.readChunk(FlacTestStreams.CHUNK_SIZE)) != null) {
+            checksum.update(chunk);
+            total += chunk.length;
+        }
+        decoder.close();
+        return total;
+    }
+
+    private static void compare(String name, Supplier<AudioDecoder> decoders) {
+        for (int round = 0; round < FlacTestStreams.ROUNDS; round++) {
+            CRC32 chunkChecksum = new CRC32();
+            long start = System.nanoTime();
+            long chunkBytes = decodeWithReadChunk(decoders.get(), chunkChecksum);
+            long chunkNanos = System.nanoTime() - start;
+
+            CRC32 intoChecksum = new CRC32();
+            start = System.nanoTime();
+            long intoBytes = FlacTestStreams.drain(decoders.get(), intoChecksum);
+            long intoNanos = System.nanoTime() - start;
+
+            assert chunkBytes > 0 && chunkBytes == intoBytes;
+            assert chunkChecksum.getValue() == intoChecksum.getValue();
+            LOGGER.info("{} round {}: readChunk {} MB/s, readInto {} MB/s", name, round,
+                    chunkBytes * 1000 / Math.max(chunkNanos, 1), intoBytes * 1000 / Math.max(intoNanos, 1));
+        }
+    }
+
+    @Test
+    public void compareReadPaths() {
+        // 约 60 秒 44.1kHz 立体声
+        byte[] flac = FlacTestStreams.generate(2, 16, 4096, 646);
+        compare("FLAC", () -> FlacTestStreams.newDecoder(flac));
+    }
+
+    @Test
+    public void compareMp3ReadPaths() {
+        // 约 60 秒，每帧 1152 个样本
+        byte[] mp3 = silentMp3(2297);
+        compare("MP3", () -> newMp3Decoder(mp3));
+    }
+
+    @Test
+    @SneakyThrows
+    public void convert24BitKeepsHighBytes() {
+        int frames = 1152 * 4;
+        FLACStreamDecoder decoder = FlacTestStreams.newDecoder(FlacTestStreams.generate(2, 24, 1152, 4));
+        ByteBuffer buffer = ByteBuffer.allocate(frames * 2 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && decoder.readInto(buffer) >= 0) {
+        }
+        decoder.close();
+        assert buffer.position() == frames * 2 * 2;
+        for (int i = 0; i < frames; i++) {
+            for (int channel = 0; channel < 2; channel++) {
+                // 输出应为 24 位样本的高 16 位，抖动最多带来约 1 LSB 的误差
+                float expected = FlacTestStreams.sample(channel, 24, i) / 256f;
+                assert Math.abs(buffer.getShort((i * 2 + channel) * 2) - expected) <= 1.5f;
+            }
+        }
+    }
+}
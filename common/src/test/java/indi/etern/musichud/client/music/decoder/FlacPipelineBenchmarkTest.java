@@ -0,0 +1,54 @@
+package indi.etern.musichud.client.music.decoder;
+
+import indi.etern.musichud.MusicHud;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.zip.CRC32;
+
+/**
+ * 对比 jflac 逐帧解码和 FlacFramePipeline 并行解码，两者输出必须逐字节相同
+ */
+public class FlacPipelineBenchmarkTest {
+    private static final Logger LOGGER = MusicHud.getLogger(FlacPipelineBenchmarkTest.class);
+    private static long decode(byte[] flac, boolean parallel, CRC32 checksum) {
+        return FlacTestStreams.drain(FlacTestStreams.newDecoder(flac, parallel), checksum);
+    }
+
+    private static void compare(String name, byte[] flac) {
+        for (int round = 0; round < FlacTestStreams.ROUNDS; round++) {
+            CRC32 sequentialChecksum = new CRC32();
+            long start = System.nanoTime();
+            long sequentialBytes = decode(flac, false, sequentialChecksum);
+            long sequentialNanos = System.nanoTime() - start;
+
+            CRC32 parallelChecksum = new CRC32();
+            start = System.nanoTime();
+            long parallelBytes = decode(flac, true, parallelChecksum);
+            long parallelNanos = System.nanoTime() - start;
+
+            assert sequentialBytes == parallelBytes;
+            assert sequentialChecksum.getValue() == parallelChecksum.getValue();
+            LOGGER.info("{} round {}: sequential {} MB/s, pipeline ({} threads) {} MB/s", name, round,
+                    sequentialBytes * 1000 / Math.max(sequentialNanos, 1), FlacFramePipeline.POOL_SIZE,
+                    parallelBytes * 1000 / Math.max(parallelNanos, 1));
+        }
+    }
+
+    @Test
+    public void compareVerbatim16Bit() {
+        // 约 60 秒 44.1kHz 立体声
+        compare("verbatim 16-bit", FlacTestStreams.generate(2, 16, 4096, 646));
+    }
+
+    @Test
+    public void comparePredicted24Bit() {
+        compare("predicted 24-bit", FlacTestStreams.generate(2, 24, 4096, 646, true));
+    }
+
+    @Test
+    public void pipelineHandlesShortStreams() {
+        byte[] flac = FlacTestStreams.generate(1, 16, 1152, 3, true);
+        assert decode(flac, true, new CRC32()) == 1152L * 3 * 2;
+    }
+}
@@ -0,0 +1,221 @@
+package indi.etern.musichud.client.music.decoder;
+
+import lombok.SneakyThrows;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * 生成只含 VERBATIM 或二阶 FIXED 预测子帧的 FLAC 流，以及各基准测试共用的解码辅助方法，不依赖外部音频文件
+ */
+final class FlacTestStreams {
+    static final int SAMPLE_RATE = 44100;
+    static final int CHUNK_SIZE = 65536;
+    static final int ROUNDS = 5;
+
+    private FlacTestStreams() {
+    }
+
+    static FLACStreamDecoder newDecoder(byte[] flac) {
+        return newDecoder(flac, FlacFramePipeline.POOL_SIZE > 1);
+    }
+
+    @SneakyThrows
+    static FLACStreamDecoder newDecoder(byte[] flac, boolean parallel) {
+        return new FLACStreamDecoder(new BufferedInputStream(new ByteArrayInputStream(flac)), null, parallel);
+    }
+
+    /**
+     * 用 readInto 把 decoder 读到结尾后关闭
+     *
+     * @param checksum 输出数据的校验和，为 null 时不计算
+     * @return 输出的字节数
+     */
+    @SneakyThrows
+    static long drain(AudioDecoder decoder, Checksum checksum) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        long total = 0;
+        int read;
+        while ((read = decoder.readInto(buffer.clear())) >= 0) {
+            if (checksum != null) {
+                checksum.update(buffer.flip());
+            }
+            total += read;
+        }
+        decoder.close();
+        return total;
+    }
+
+    static byte[] generate(int channels, int bitsPerSample, int blockSize, int frameCount) {
+        return generate(channels, bitsPerSample, blockSize, frameCount, false);
+    }
+
+    /**
+     * @param predicted 为 true 时使用二阶 FIXED 预测加 Rice 编码残差，解码开销接近真实文件
+     */
+    static byte[] generate(int channels, int bitsPerSample, int blockSize, int frameCount, boolean predicted) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long totalSamples = (long) blockSize * frameCount;
+        output.writeBytes(new byte[]{'f', 'L', 'a', 'C', (byte) 0x80, 0, 0, 34});
+        writeBits(output, blockSize, 2);
+        writeBits(output, blockSize, 2);
+        writeBits(output, 0, 3);
+        writeBits(output, 0, 3);
+        writeBits(output, ((long) SAMPLE_RATE << 44) | ((long) (channels - 1) << 41)
+                | ((long) (bitsPerSample - 1) << 36) | totalSamples, 8);
+        output.writeBytes(new byte[16]);
+
+        for (int frame = 0; frame < frameCount; frame++) {
+            output.writeBytes(frame(channels, bitsPerSample, blockSize, frame, predicted));
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 生成的流中 channel 声道第 sampleIndex 个样本的值：半满幅、每个声道频率不同的正弦波
+     */
+    static int sample(int channel, int bitsPerSample, long sampleIndex) {
+        int amplitude = 1 << (bitsPerSample - 2);
+        return (int) (amplitude * Math.sin(2 * Math.PI * (440 + channel * 110) * sampleIndex / SAMPLE_RATE));
+    }
+
+    private static byte[] frame(int channels, int bitsPerSample, int blockSize, int frameNumber, boolean predicted) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0xFF);
+        frame.write(0xF8);
+        // 块大小编码 7（16位显式值），采样率编码 9（44.1kHz）
+        frame.write((7 << 4) | 9);
+        frame.write(((channels - 1) << 4) | (sampleSizeCode(bitsPerSample) << 1));
+        writeUtf8Number(frame, frameNumber);
+        writeBits(frame, blockSize - 1, 2);
+        frame.write(crc8(frame.toByteArray()));
+
+        int bytesPerSample = bitsPerSample / 8;
+        BitWriter bits = new BitWriter(frame);
+        for (int channel = 0; channel < channels; channel++) {
+            int[] samples = new int[blockSize];
+            for (int i = 0; i < blockSize; i++) {
+                samples[i] = sample(channel, bitsPerSample, (long) frameNumber * blockSize + i);
+            }
+            if (predicted) {
+                writeFixedSubframe(bits, samples, bitsPerSample);
+            } else {
+                frame.write(0x02); // VERBATIM
+                for (int sample : samples) {
+                    writeBits(frame, sample, bytesPerSample);
+                }
+            }
+        }
+        bits.align();
+        writeBits(frame, crc16(frame.toByteArray()), 2);
+        return frame.toByteArray();
+    }
+
+    /**
+     * 二阶 FIXED 子帧：两个预热样本，之后是单分区 Rice 编码的预测残差
+     */
+    private static void writeFixedSubframe(BitWriter bits, int[] samples, int bitsPerSample) {
+        bits.write(0x14, 8); // FIXED，阶数 2
+        bits.write(samples[0], bitsPerSample);
+        bits.write(samples[1], bitsPerSample);
+        int[] residuals = new int[samples.length - 2];
+        long sum = 0;
+        for (int i = 2; i < samples.length; i++) {
+            residuals[i - 2] = samples[i] - 2 * samples[i - 1] + samples[i - 2];
+            sum += Math.abs(residuals[i - 2]);
+        }
+        long mean = Math.max(1, sum / Math.max(1, residuals.length));
+        int parameter = Math.min(14, 63 - Long.numberOfLeadingZeros(mean));
+        bits.write(0, 2); // 4 位 Rice 参数
+        bits.write(0, 4); // 分区阶数 0
+        bits.write(parameter, 4);
+        for (int residual : residuals) {
+            int folded = (residual << 1) ^ (residual >> 31);
+            for (int q = folded >>> parameter; q > 0; q--) {
+                bits.write(0, 1);
+            }
+            bits.write(1, 1);
+            bits.write(folded, parameter);
+        }
+    }
+
+    private static int sampleSizeCode(int bitsPerSample) {
+        return switch (bitsPerSample) {
+            case 8 -> 1;
+            case 16 -> 4;
+            case 24 -> 6;
+            default -> throw new IllegalArgumentException("Unsupported bits per sample: " + bitsPerSample);
+        };
+    }
+
+    private static void writeUtf8Number(ByteArrayOutputStream output, int number) {
+        if (number < 0x80) {
+            output.write(number);
+        } else if (number < 0x800) {
+            output.write(0xC0 | (number >> 6));
+            output.write(0x80 | (number & 0x3F));
+        } else {
+            output.write(0xE0 | (number >> 12));
+            output.write(0x80 | ((number >> 6) & 0x3F));
+            output.write(0x80 | (number & 0x3F));
+        }
+    }
+
+    private static void writeBits(ByteArrayOutputStream output, long value, int bytes) {
+        for (int i = bytes - 1; i >= 0; i--) {
+            output.write((int) (value >>> (i * 8)) & 0xFF);
+        }
+    }
+
+    private static final class BitWriter {
+        private final ByteArrayOutputStream output;
+        private int accumulator = 0;
+        private int count = 0;
+
+        BitWriter(ByteArrayOutputStream output) {
+            this.output = output;
+        }
+
+        void write(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                accumulator = (accumulator << 1) | (int) ((value >>> i) & 1);
+                if (++count == 8) {
+                    output.write(accumulator);
+                    accumulator = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        void align() {
+            if (count > 0) {
+                write(0, 8 - count);
+            }
+        }
+    }
+
+    private static int crc8(byte[] data) {
+        int crc = 0;
+        for (byte b : data) {
+            crc ^= b & 0xFF;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data) {
+        int crc = 0;
+        for (byte b : data) {
+            crc ^= (b & 0xFF) << 8;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,150 @@
+package indi.etern.musichud.client.music.decoder;
+
+import indi.etern.musichud.MusicHud;
+import lombok.SneakyThrows;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.openal.AL10;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * PcmStage 的位深转换、混音和重采样的正确性与吞吐量
+ */
+public class PcmStageBenchmarkTest {
+    private static final Logger LOGGER = MusicHud.getLogger(PcmStageBenchmarkTest.class);
+    private static FLACStreamDecoder newDecoder(byte[] flac) {
+        return FlacTestStreams.newDecoder(flac, false);
+    }
+
+    private static long drain(AudioDecoder decoder) {
+        return FlacTestStreams.drain(decoder, null);
+    }
+
+    private static float[] sine(int sampleRate, int channels, double frequency, int frames) {
+        float[] samples = new float[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            float value = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+            for (int c = 0; c < channels; c++) {
+                samples[i * channels + c] = value;
+            }
+        }
+        return samples;
+    }
+
+    private static double rms(float[] samples, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    @Test
+    public void mono24BitReportsMonoFormat() {
+        FLACStreamDecoder decoder = newDecoder(FlacTestStreams.generate(1, 24, 1152, 2));
+        assert decoder.getFormat() == AL10.AL_FORMAT_MONO16;
+        PcmStage stage = new PcmStage(decoder, false, 0);
+        assert stage.getFormat() == AL10.AL_FORMAT_MONO16;
+        assert drain(stage) == 1152L * 2 * 2;
+    }
+
+    @Test
+    @SneakyThrows
+    public void ditherStaysWithinOneLsb() {
+        byte[] flac = FlacTestStreams.generate(2, 24, 1152, 4, true);
+        FLACStreamDecoder reference = newDecoder(flac);
+        float[] original = new float[1152 * 4 * 2];
+        int samples = 0;
+        int read;
+        while ((read = reference.readFloats(original, samples, original.length - samples)) > 0) {
+            samples += read;
+        }
+        reference.close();
+
+        PcmStage stage = new PcmStage(newDecoder(flac), false, 0);
+        assert !stage.isPassthrough();
+        ByteBuffer buffer = ByteBuffer.allocate(original.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && stage.readInto(buffer) >= 0) {
+        }
+        stage.close();
+        assert buffer.position() == samples * 2;
+        for (int i = 0; i < samples; i++) {
+            float error = buffer.getShort(i * 2) - original[i] * 32768f;
+            assert Math.abs(error) <= 1.5f;
+        }
+    }
+
+    @Test
+    public void downmixHalvesOutput() {
+        byte[] flac = FlacTestStreams.generate(2, 16, 4096, 20);
+        PcmStage stage = new PcmStage(newDecoder(flac), true, 0);
+        assert stage.getFormat() == AL10.AL_FORMAT_MONO16;
+        assert drain(stage) == 4096L * 20 * 2;
+    }
+
+    @Test
+    public void sixteenBitStreamsPassThrough() {
+        PcmStage stage = new PcmStage(newDecoder(FlacTestStreams.generate(2, 16, 4096, 2)), false, 48000);
+        assert stage.isPassthrough();
+        assert stage.getSampleRate() == FlacTestStreams.SAMPLE_RATE;
+    }
+
+    @Test
+    public void resamplerKeepsPassbandAndRejectsAliases() {
+        int frames = 96000;
+        PolyphaseResampler resampler = new PolyphaseResampler(96000, 48000, 1);
+        float[] output = new float[resampler.maxOutputFrames(frames)];
+        int produced = resampler.process(sine(96000, 1, 1000, frames), frames, output);
+        assert Math.abs(produced - 48000) <= 64;
+        // 跳过开头的补零部分
+        double passband = rms(output, 1000, produced);
+        assert Math.abs(passband - 0.5 / Math.sqrt(2)) < 0.01;
+
+        resampler.reset();
+        produced = resampler.process(sine(96000, 1, 30000, frames), frames, output);
+        double alias = rms(output, 1000, produced);
+        // 30kHz 在 48kHz 输出中会混叠到 18kHz，至少衰减 60dB
+        assert alias < passband / 1000;
+    }
+
+    @Test
+    public void benchmarkResampling() {
+        int channels = 2;
+        int frames = 192000 * 10;
+        float[] input = sine(192000, channels, 1000, frames);
+        float[] chunkOutput = new float[0];
+        for (int round = 0; round < FlacTestStreams.ROUNDS; round++) {
+            PolyphaseResampler resampler = new PolyphaseResampler(192000, 48000, channels);
+            float[] chunk = new float[4096 * channels];
+            long produced = 0;
+            long start = System.nanoTime();
+            for (int offset = 0; offset < frames; offset += 4096) {
+                int count = Math.min(4096, frames - offset);
+                System.arraycopy(input, offset * channels, chunk, 0, count * channels);
+                int capacity = resampler.maxOutputFrames(count) * channels;
+                if (chunkOutput.length < capacity) {
+                    chunkOutput = new float[capacity];
+                }
+                produced += resampler.process(chunk, count, chunkOutput);
+            }
+            long nanos = System.nanoTime() - start;
+            assert Math.abs(produced - frames / 4) <= 64;
+            LOGGER.info("192k -> 48k stereo round {}: {}x realtime", round,
+                    10_000_000_000L / Math.max(nanos, 1));
+        }
+    }
+
+    @Test
+    public void benchmarkDither() {
+        byte[] flac = FlacTestStreams.generate(2, 24, 4096, 646, true);
+        for (int round = 0; round < FlacTestStreams.ROUNDS; round++) {
+            long start = System.nanoTime();
+            long bytes = drain(new PcmStage(newDecoder(flac), false, 0));
+            long nanos = System.nanoTime() - start;
+            assert bytes == 4096L * 646 * 2 * 2;
+            LOGGER.info("24-bit -> 16-bit dither round {}: {} MB/s", round, bytes * 1000 / Math.max(nanos, 1));
+        }
+    }
+}